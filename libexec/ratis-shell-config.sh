@@ -47,6 +47,15 @@ fi
 
 RATIS_SHELL_CLIENT_CLASSPATH="${RATIS_SHELL_CONF_DIR}/:${RATIS_SHELL_CLASSPATH}:${RATIS_SHELL_ASSEMBLY_CLIENT_JAR}"
 
+# Use the class data sharing archive built by "mvn package -Pappcds" when it is newer than the jar.
+# The archive only applies when the jar it was built from is the first classpath entry, and the JVM
+# ignores it if it does not match the jar or the JVM.
+RATIS_SHELL_CDS_ARCHIVE="${RATIS_SHELL_CDS_ARCHIVE:-${RATIS_SHELL_HOME}/target/ratis-shell-${VERSION}.jsa}"
+if [[ ${JAVA_MAJOR} == 011 && -z "${RATIS_SHELL_CLASSPATH}" && "${RATIS_SHELL_CDS_ARCHIVE}" -nt "${RATIS_SHELL_ASSEMBLY_CLIENT_JAR}" ]]; then
+  RATIS_SHELL_CLIENT_CLASSPATH="${RATIS_SHELL_ASSEMBLY_CLIENT_JAR}:${RATIS_SHELL_CONF_DIR}/"
+  RATIS_SHELL_JAVA_OPTS+=" -Xshare:auto -XX:SharedArchiveFile=${RATIS_SHELL_CDS_ARCHIVE}"
+fi
+
 if [[ -n "${RATIS_SHELL_HOME}" ]]; then
   RATIS_SHELL_JAVA_OPTS+=" -Dratis.shell.home=${RATIS_SHELL_HOME}"
 fi
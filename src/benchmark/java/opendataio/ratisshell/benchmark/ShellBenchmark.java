@@ -0,0 +1,305 @@
+package opendataio.ratisshell.benchmark;
+
+import opendataio.ratisshell.cli.RaftUtils;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.util.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Measures where the time of the shell commands goes. Every command runs in a fresh JVM through
+ * {@link ShellProbe}, against a ratis cluster running in the benchmark process. The median time
+ * of every phase is compared with a stored baseline, and a phase slower than the baseline by more
+ * than the tolerance fails the benchmark. The timings depend on the machine, so no baseline is
+ * shipped: when the baseline file does not exist, the first run stores its results as the
+ * baseline.
+ *
+ * Usage: ShellBenchmark [-iterations N] [-baseline FILE] [-tolerance RATIO] [-update true]
+ */
+public final class ShellBenchmark {
+  private static final List<String> PHASES = Arrays.asList(
+      "jvm", "configuration", "loadCommands", "discovery", "client", "command", "total");
+  /** A phase is not regressed unless it is slower than the baseline by at least this. */
+  private static final long MIN_REGRESSION_MS = 20;
+  private static final int CLUSTER_SIZE = 3;
+
+  private ShellBenchmark() {} // prevent instantiation
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the benchmark options
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLine cl;
+    try {
+      cl = new DefaultParser().parse(new Options()
+          .addOption("iterations", true, "Number of runs of every command")
+          .addOption("baseline", true, "Baseline file to compare with")
+          .addOption("tolerance", true, "Tolerated slowdown ratio of a phase")
+          .addOption("update", true, "Whether to store the results as the new baseline"), args);
+    } catch (ParseException e) {
+      System.err.println(e.getMessage());
+      System.exit(-1);
+      return;
+    }
+    int iterations = Integer.parseInt(cl.getOptionValue("iterations", "5"));
+    File baselineFile = new File(cl.getOptionValue("baseline", "benchmark-baseline.properties"));
+    double tolerance = Double.parseDouble(cl.getOptionValue("tolerance", "0.2"));
+    boolean update = Boolean.parseBoolean(cl.getOptionValue("update", "false"));
+
+    Map<String, List<Map<String, Long>>> samples = new LinkedHashMap<>();
+    try (LocalCluster cluster = new LocalCluster()) {
+      cluster.start(CLUSTER_SIZE);
+      String peers = cluster.getAddresses().stream().collect(Collectors.joining(","));
+      for (int i = 0; i < iterations; i++) {
+        System.out.printf("iteration %d/%d%n", i + 1, iterations);
+        String target = cluster.getAddresses().get(i % CLUSTER_SIZE);
+        run(samples, "info", "-peers", peers);
+        run(samples, "setPriority", "-peers", peers, "-addressPriority", target + ",1");
+        run(samples, "elect", "-peers", peers, "-address", target);
+        String standby = cluster.startStandby();
+        run(samples, "quorumAdd", "-peers", peers, "-addPeer", standby);
+        run(samples, "quorumRemove", "-peers", peers, "-removePeer", standby);
+        cluster.stopStandby();
+      }
+    }
+
+    Map<String, Long> medians = new LinkedHashMap<>();
+    System.out.printf("%n%-14s", "median (ms)");
+    PHASES.forEach(phase -> System.out.printf("%14s", phase));
+    System.out.println();
+    samples.forEach((command, runs) -> {
+      System.out.printf("%-14s", command);
+      for (String phase : PHASES) {
+        long median = median(runs.stream()
+            .map(run -> run.getOrDefault(phase, 0L)).collect(Collectors.toList()));
+        medians.put(command + "." + phase, median);
+        System.out.printf("%14d", median);
+      }
+      System.out.println();
+    });
+
+    if (update || !baselineFile.exists()) {
+      storeBaseline(baselineFile, medians);
+      System.out.println("Stored the results as the baseline in " + baselineFile);
+      return;
+    }
+    Properties baseline = new Properties();
+    try (InputStream in = new FileInputStream(baselineFile)) {
+      baseline.load(in);
+    }
+    List<String> regressions = new ArrayList<>();
+    medians.forEach((key, median) -> {
+      String value = baseline.getProperty(key);
+      if (value == null) {
+        return;
+      }
+      long expected = Long.parseLong(value);
+      if (median > expected * (1 + tolerance) && median - expected >= MIN_REGRESSION_MS) {
+        regressions.add(String.format("%s: %dms, baseline %dms", key, median, expected));
+      }
+    });
+    if (regressions.isEmpty()) {
+      System.out.println("No regression compared with the baseline in " + baselineFile);
+      return;
+    }
+    System.out.println("Regressions compared with the baseline in " + baselineFile + ":");
+    regressions.forEach(r -> System.out.println("  " + r));
+    System.exit(1);
+  }
+
+  private static void run(Map<String, List<Map<String, Long>>> samples, String... args)
+      throws IOException, InterruptedException {
+    List<String> cmd = new ArrayList<>(Arrays.asList(
+        new File(System.getProperty("java.home"), "bin/java").getPath(),
+        "-cp", System.getProperty("java.class.path"),
+        "-Dratis.shell.test.mode=true",
+        // measure the discovery of every run instead of reading the previous result
+        "-Dratis.shell.discovery.cache.ttl.ms=0",
+        ShellProbe.class.getName()));
+    cmd.addAll(Arrays.asList(args));
+    long start = System.nanoTime();
+    Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+    List<String> output = new ArrayList<>();
+    Map<String, Long> phases = null;
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(ShellProbe.PHASES_PREFIX)) {
+          phases = parsePhases(line.substring(ShellProbe.PHASES_PREFIX.length()));
+        } else {
+          output.add(line);
+        }
+      }
+    }
+    process.waitFor();
+    long totalMs = (System.nanoTime() - start) / 1_000_000;
+    if (phases == null || phases.get(ShellProbe.EXIT_CODE) != 0) {
+      output.forEach(System.err::println);
+      throw new IllegalStateException("Failed to run " + String.join(" ", args));
+    }
+    phases.put("total", totalMs);
+    samples.computeIfAbsent(args[0], k -> new ArrayList<>()).add(phases);
+  }
+
+  private static Map<String, Long> parsePhases(String line) {
+    Map<String, Long> phases = new HashMap<>();
+    for (String phase : line.split(",")) {
+      String[] pair = phase.split("=");
+      phases.put(pair[0], Long.parseLong(pair[1]));
+    }
+    return phases;
+  }
+
+  private static long median(List<Long> values) {
+    List<Long> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    return sorted.get(sorted.size() / 2);
+  }
+
+  private static void storeBaseline(File file, Map<String, Long> medians) throws IOException {
+    Properties baseline = new Properties();
+    medians.forEach((key, median) -> baseline.setProperty(key, String.valueOf(median)));
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create directory " + dir);
+    }
+    try (OutputStream out = new FileOutputStream(file)) {
+      baseline.store(out, "Median milliseconds of the phases of the shell commands");
+    }
+  }
+
+  /**
+   * A ratis cluster running in this process, plus a standby server which is not in the group
+   * configuration, to be added and removed by the quorum commands.
+   */
+  private static final class LocalCluster implements Closeable {
+    private final RaftGroupId mGroupId = RaftGroupId.valueOf(UUID.randomUUID());
+    private final File mDir;
+    private final List<RaftServer> mServers = new ArrayList<>();
+    private final List<String> mAddresses = new ArrayList<>();
+    private RaftGroup mGroup;
+    private RaftServer mStandby;
+
+    LocalCluster() throws IOException {
+      mDir = Files.createTempDirectory("ratis-shell-benchmark").toFile();
+    }
+
+    void start(int size) throws Exception {
+      List<RaftPeer> peers = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        peers.add(newPeer());
+      }
+      mGroup = RaftGroup.valueOf(mGroupId, peers);
+      for (RaftPeer peer : peers) {
+        mServers.add(startServer(peer));
+        mAddresses.add(peer.getAddress());
+      }
+      long deadline = System.currentTimeMillis() + 60_000;
+      while (mServers.stream().noneMatch(this::isLeader)) {
+        if (System.currentTimeMillis() > deadline) {
+          throw new TimeoutException("No leader is elected in the benchmark cluster");
+        }
+        Thread.sleep(100);
+      }
+    }
+
+    List<String> getAddresses() {
+      return mAddresses;
+    }
+
+    String startStandby() throws IOException {
+      RaftPeer peer = newPeer();
+      mStandby = startServer(peer);
+      return peer.getAddress();
+    }
+
+    void stopStandby() throws IOException {
+      if (mStandby != null) {
+        mStandby.close();
+        mStandby = null;
+      }
+    }
+
+    private boolean isLeader(RaftServer server) {
+      try {
+        return server.getDivision(mGroupId).getInfo().isLeader();
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    private RaftPeer newPeer() throws IOException {
+      int port;
+      try (ServerSocket socket = new ServerSocket(0)) {
+        port = socket.getLocalPort();
+      }
+      InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+      return RaftPeer.newBuilder()
+          .setId(RaftUtils.getPeerId(address))
+          .setAddress(address)
+          .build();
+    }
+
+    private RaftServer startServer(RaftPeer peer) throws IOException {
+      RaftProperties properties = new RaftProperties();
+      GrpcConfigKeys.Server.setPort(properties, Integer.parseInt(
+          peer.getAddress().substring(peer.getAddress().lastIndexOf(':') + 1)));
+      RaftServerConfigKeys.setStorageDir(properties,
+          Collections.singletonList(new File(mDir, peer.getId().toString())));
+      RaftServer server = RaftServer.newBuilder()
+          .setServerId(peer.getId())
+          .setGroup(mGroup)
+          .setProperties(properties)
+          .setStateMachine(new BaseStateMachine())
+          .build();
+      server.start();
+      return server;
+    }
+
+    @Override
+    public void close() throws IOException {
+      stopStandby();
+      for (RaftServer server : mServers) {
+        server.close();
+      }
+      FileUtils.deleteFully(mDir);
+    }
+  }
+}
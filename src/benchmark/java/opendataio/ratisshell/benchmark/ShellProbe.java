@@ -0,0 +1,56 @@
+package opendataio.ratisshell.benchmark;
+
+import opendataio.ratisshell.cli.sh.RatisShell;
+import opendataio.ratisshell.util.ConfigurationUtils;
+import opendataio.ratisshell.util.PhaseTimer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs one shell command in a fresh JVM, the way bin/ratis does, and prints how long every phase
+ * of the invocation took on a line starting with {@link #PHASES_PREFIX}.
+ */
+public final class ShellProbe {
+  public static final String PHASES_PREFIX = "PHASES ";
+  public static final String EXIT_CODE = "exitCode";
+
+  private ShellProbe() {} // prevent instantiation
+
+  /**
+   * Runs a shell command.
+   *
+   * @param args the shell command and its arguments
+   */
+  public static void main(String[] args) throws IOException {
+    long jvmMs = System.currentTimeMillis()
+        - ManagementFactory.getRuntimeMXBean().getStartTime();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(output, true, "UTF-8");
+    int ret;
+    PhaseTimer.begin();
+    try (PhaseTimer.Phase phase = PhaseTimer.phase("configuration")) {
+      ConfigurationUtils.defaults();
+    }
+    try (RatisShell shell = new RatisShell(out, out, null)) {
+      try (PhaseTimer.Phase phase = PhaseTimer.phase("command")) {
+        ret = shell.run(args);
+      }
+    }
+    Map<String, Long> phases = PhaseTimer.end();
+    phases.put("jvm", jvmMs);
+    phases.put(EXIT_CODE, (long) ret);
+    if (ret != 0) {
+      System.out.print(new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+    System.out.println(PHASES_PREFIX + phases.entrySet().stream()
+        .map(e -> e.getKey() + "=" + e.getValue())
+        .collect(Collectors.joining(",")));
+    System.exit(ret);
+  }
+}
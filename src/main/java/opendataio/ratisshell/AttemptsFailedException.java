@@ -0,0 +1,41 @@
+package opendataio.ratisshell;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown when none of the attempts of an operation succeeds, holding the failure of every
+ * attempted target.
+ */
+public class AttemptsFailedException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final Map<String, Throwable> mFailures;
+
+  /**
+   * @param operation the failed operation
+   * @param failures the failure of every attempted target, in the order of the targets
+   */
+  public AttemptsFailedException(String operation, Map<String, Throwable> failures) {
+    super(String.format("%s failed: %s", operation, failures.isEmpty() ? "no target is attempted"
+        : failures.entrySet().stream()
+            .map(e -> e.getKey() + ": " + describe(e.getValue()))
+            .collect(Collectors.joining("; "))));
+    mFailures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    mFailures.values().forEach(this::addSuppressed);
+  }
+
+  private static String describe(Throwable t) {
+    return t.getMessage() == null ? t.getClass().getSimpleName() : t.getMessage();
+  }
+
+  /**
+   * @return the failure of every attempted target, in the order of the targets
+   */
+  public Map<String, Throwable> getFailures() {
+    return mFailures;
+  }
+}
@@ -1,33 +1,342 @@
 package opendataio.ratisshell;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import opendataio.ratisshell.util.Deadline;
+import org.apache.ratis.protocol.exceptions.TimeoutIOException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
  * Retry related utilities function.
+ *
+ * Every attempt runs asynchronously with a timeout, which never exceeds the deadline of the whole
+ * operation, and the attempts still running are interrupted once the operation is complete. When
+ * no attempt succeeds, the operation fails with an {@link AttemptsFailedException} holding the
+ * failure of every attempt.
  */
-public class RetryUtil {
+public final class RetryUtil {
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ratis-shell-retry-%d").build());
+  private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ratis-shell-timer-%d").build());
+
+  private RetryUtil() {} // prevent instantiation
 
   /**
-   * Execute a given function with input parameter from member of list.
+   * An attempt of an operation against one target.
    *
-   * @param list the input parameters
-   * @param function the function to be executed
-   * @param <T> parameter type
-   * @param <K> return value type
-   * @return the function return value
+   * @param <T> the target type
+   * @param <R> the result type
    */
-  public static <T, K> K run(List<T> list, Function<T, K> function) {
-    for (T t : list) {
-      try {
-        K ret = function.apply(t);
-        if (ret != null) {
-          return ret;
+  @FunctionalInterface
+  public interface Attempt<T, R> {
+    /**
+     * @param target the target to attempt
+     * @return the result
+     */
+    R run(T target) throws Exception;
+  }
+
+  /**
+   * A listener of the outcome of the attempts. The attempts cancelled because the operation is
+   * complete have no outcome.
+   *
+   * @param <T> the target type
+   */
+  public interface Listener<T> {
+    /**
+     * @param target the attempted target
+     * @param latencyMs the time in milliseconds the attempt took
+     */
+    void onSuccess(T target, long latencyMs);
+
+    /**
+     * @param target the attempted target
+     * @param t the failure of the attempt, a {@link TimeoutIOException} if it timed out
+     */
+    void onFailure(T target, Throwable t);
+  }
+
+  /**
+   * Attempts an operation against all the targets at once, and completes with the first
+   * successful result. The other attempts are cancelled once a result is available.
+   *
+   * @param operation the operation name, for the error message
+   * @param targets the targets to attempt
+   * @param attempt the attempt
+   * @param deadline the deadline of the operation
+   * @param attemptTimeoutMs the timeout of every attempt in milliseconds
+   * @param <T> the target type
+   * @param <R> the result type
+   * @return the future of the first successful result
+   */
+  public static <T, R> CompletableFuture<R> anyOf(String operation, List<T> targets,
+      Attempt<T, R> attempt, Deadline deadline, long attemptTimeoutMs) {
+    return anyOf(operation, targets, attempt, deadline, attemptTimeoutMs, null);
+  }
+
+  /**
+   * Attempts an operation against all the targets at once, like
+   * {@link #anyOf(String, List, Attempt, Deadline, long)}, reporting the outcome of every
+   * attempt to the listener.
+   *
+   * @param operation the operation name, for the error message
+   * @param targets the targets to attempt
+   * @param attempt the attempt
+   * @param deadline the deadline of the operation
+   * @param attemptTimeoutMs the timeout of every attempt in milliseconds
+   * @param listener the listener of the outcome of the attempts, or null
+   * @param <T> the target type
+   * @param <R> the result type
+   * @return the future of the first successful result
+   */
+  public static <T, R> CompletableFuture<R> anyOf(String operation, List<T> targets,
+      Attempt<T, R> attempt, Deadline deadline, long attemptTimeoutMs,
+      @Nullable Listener<T> listener) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    Map<String, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+    AtomicInteger pending = new AtomicInteger(targets.size());
+    if (targets.isEmpty()) {
+      result.completeExceptionally(new AttemptsFailedException(operation, failures));
+      return result;
+    }
+    for (T target : targets) {
+      CompletableFuture<R> future = submit(target, attempt, deadline.cap(attemptTimeoutMs),
+          "Timed out", listener);
+      // a successful attempt completes the result and the result cancels the others
+      result.whenComplete((r, e) -> future.cancel(true));
+      future.whenComplete((r, e) -> {
+        if (e == null) {
+          result.complete(r);
+          return;
+        }
+        failures.put(String.valueOf(target), unwrap(e));
+        if (pending.decrementAndGet() == 0) {
+          result.completeExceptionally(new AttemptsFailedException(operation, failures));
         }
-      } catch (Throwable e) {
-        e.printStackTrace();
+      });
+    }
+    return result;
+  }
+
+  /**
+   * Attempts an operation against the targets one after another in the given order, until an
+   * attempt succeeds or the deadline passes.
+   *
+   * @param operation the operation name, for the error message
+   * @param targets the targets to attempt
+   * @param attempt the attempt
+   * @param deadline the deadline of the operation
+   * @param attemptTimeoutMs the timeout of every attempt in milliseconds
+   * @param <T> the target type
+   * @param <R> the result type
+   * @return the future of the first successful result
+   */
+  public static <T, R> CompletableFuture<R> failover(String operation, List<T> targets,
+      Attempt<T, R> attempt, Deadline deadline, long attemptTimeoutMs) {
+    return failover(operation, targets, attempt, deadline, attemptTimeoutMs, null);
+  }
+
+  /**
+   * Attempts an operation against the targets one after another, like
+   * {@link #failover(String, List, Attempt, Deadline, long)}, reporting the outcome of every
+   * attempt to the listener.
+   *
+   * @param operation the operation name, for the error message
+   * @param targets the targets to attempt
+   * @param attempt the attempt
+   * @param deadline the deadline of the operation
+   * @param attemptTimeoutMs the timeout of every attempt in milliseconds
+   * @param listener the listener of the outcome of the attempts, or null
+   * @param <T> the target type
+   * @param <R> the result type
+   * @return the future of the first successful result
+   */
+  public static <T, R> CompletableFuture<R> failover(String operation, List<T> targets,
+      Attempt<T, R> attempt, Deadline deadline, long attemptTimeoutMs,
+      @Nullable Listener<T> listener) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    failover(operation, targets, 0, attempt, deadline, attemptTimeoutMs, listener,
+        new LinkedHashMap<>(), result);
+    return result;
+  }
+
+  private static <T, R> void failover(String operation, List<T> targets, int index,
+      Attempt<T, R> attempt, Deadline deadline, long attemptTimeoutMs,
+      @Nullable Listener<T> listener, Map<String, Throwable> failures,
+      CompletableFuture<R> result) {
+    if (index == targets.size() || deadline.isExpired() || result.isDone()) {
+      result.completeExceptionally(new AttemptsFailedException(operation, failures));
+      return;
+    }
+    T target = targets.get(index);
+    CompletableFuture<R> future = submit(target, attempt, deadline.cap(attemptTimeoutMs),
+        "Timed out", listener);
+    result.whenComplete((r, e) -> future.cancel(true));
+    future.whenComplete((r, e) -> {
+      if (e == null) {
+        result.complete(r);
+      } else {
+        failures.put(String.valueOf(target), unwrap(e));
+        failover(operation, targets, index + 1, attempt, deadline, attemptTimeoutMs, listener,
+            failures, result);
       }
+    });
+  }
+
+  /**
+   * Runs an operation asynchronously, which is cancelled if it is not complete by the deadline.
+   *
+   * @param operation the operation name, for the error message
+   * @param callable the operation
+   * @param deadline the deadline of the operation
+   * @param <R> the result type
+   * @return the future of the result
+   */
+  public static <R> CompletableFuture<R> call(String operation, Callable<R> callable,
+      Deadline deadline) {
+    return submit(operation, target -> callable.call(), deadline.getRemainingMs(),
+        operation + " timed out", null);
+  }
+
+  /**
+   * Starts an operation for every target, with at most the given number of operations in
+   * progress at the same time. Blocks until the operation of the last target is started.
+   *
+   * @param targets the targets
+   * @param parallelism the maximum number of operations in progress
+   * @param operation starts the operation for a target
+   * @param <T> the target type
+   * @param <R> the result type
+   * @return the futures of the operations, in the order of the targets
+   * @throws InterruptedIOException if interrupted before all the operations are started, in
+   *         which case the started operations are cancelled
+   */
+  public static <T, R> List<CompletableFuture<R>> forEach(List<T> targets, int parallelism,
+      Function<T, CompletableFuture<R>> operation) throws InterruptedIOException {
+    Semaphore permits = new Semaphore(Math.max(parallelism, 1));
+    List<CompletableFuture<R>> futures = new ArrayList<>();
+    for (T target : targets) {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        futures.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while starting the operations");
+      }
+      CompletableFuture<R> future;
+      try {
+        future = operation.apply(target);
+      } catch (RuntimeException e) {
+        permits.release();
+        throw e;
+      }
+      future.whenComplete((r, e) -> permits.release());
+      futures.add(future);
+    }
+    return futures;
+  }
+
+  /**
+   * Waits for the result of an operation.
+   *
+   * @param future the future of the operation
+   * @param <R> the result type
+   * @return the result
+   * @throws IOException if the operation fails or the waiting is interrupted
+   */
+  public static <R> R join(CompletableFuture<R> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the result");
+    } catch (ExecutionException e) {
+      Throwable cause = unwrap(e);
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Submits one attempt, which fails with a {@link TimeoutIOException} after the timeout.
+   * Cancelling the returned future interrupts the attempt.
+   */
+  private static <T, R> CompletableFuture<R> submit(T target, Attempt<T, R> attempt,
+      long timeoutMs, String timeoutMessage, @Nullable Listener<T> listener) {
+    CompletableFuture<R> future = new CompletableFuture<>();
+    if (timeoutMs <= 0) {
+      future.completeExceptionally(new TimeoutIOException(timeoutMessage + ": deadline exceeded"));
+      return future;
+    }
+    long startNanos = System.nanoTime();
+    // set once the attempt returns, so that the attempt is only interrupted if it lost
+    AtomicBoolean done = new AtomicBoolean();
+    Future<?> task = EXECUTOR.submit(() -> {
+      R result;
+      try {
+        result = attempt.run(target);
+      } catch (Throwable t) {
+        done.set(true);
+        future.completeExceptionally(t);
+        return;
+      }
+      done.set(true);
+      future.complete(result);
+    });
+    ScheduledFuture<?> timeout = TIMER.schedule(() -> future.completeExceptionally(
+        new TimeoutIOException(timeoutMessage + " after " + timeoutMs + "ms")),
+        timeoutMs, TimeUnit.MILLISECONDS);
+    future.whenComplete((r, e) -> {
+      // the future is completed by the attempt itself in its own thread, which is not to be
+      // interrupted, or by the timeout or a cancellation, which give up the running attempt
+      if (!done.get()) {
+        task.cancel(true);
+      }
+      timeout.cancel(false);
+      if (listener == null || e instanceof CancellationException) {
+        return;
+      }
+      if (e == null) {
+        listener.onSuccess(target,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      } else {
+        listener.onFailure(target, unwrap(e));
+      }
+    });
+    return future;
+  }
+
+  private static Throwable unwrap(Throwable t) {
+    while ((t instanceof ExecutionException || t instanceof CompletionException)
+        && t.getCause() != null) {
+      t = t.getCause();
     }
-    return null;
+    return t;
   }
 }
@@ -1,19 +1,27 @@
 package opendataio.ratisshell.cli;
 
 import com.google.common.io.Closer;
+import opendataio.ratisshell.util.PhaseTimer;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 /**
  * Abstract class for handling command line inputs.
@@ -22,17 +30,33 @@ import java.util.TreeSet;
 public abstract class AbstractShell implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(AbstractShell.class);
 
-  private Map<String, Command> mCommands;
+  /** The commands of the shell, loaded on first use. */
+  private Map<String, CommandDescriptor> mCommandDescriptors;
+  /** The commands instantiated so far, only the commands actually used are instantiated. */
+  private final Map<String, Command> mCommands = new HashMap<>();
   protected Closer mCloser;
+  /** The stream to print the usages and the command outputs to. */
+  protected final PrintStream mOut;
+  /** The stream to print the errors of the shell to. */
+  protected final PrintStream mErr;
 
   /**
    * Creates a new instance of {@link AbstractShell}.
    */
   public AbstractShell() {
+    this(System.out, System.err);
+  }
+
+  /**
+   * Creates a new instance of {@link AbstractShell} printing to the given streams.
+   *
+   * @param out the stream to print the usages and the command outputs to
+   * @param err the stream to print the errors of the shell to
+   */
+  public AbstractShell(PrintStream out, PrintStream err) {
+    mOut = out;
+    mErr = err;
     mCloser = Closer.create();
-    mCommands = loadCommands();
-    // Register all loaded commands under closer.
-    mCommands.values().stream().forEach((cmd) -> mCloser.register(cmd));
   }
 
   /**
@@ -49,11 +73,11 @@ public abstract class AbstractShell implements Closeable {
 
     // Sanity check on the number of arguments
     String cmd = argv[0];
-    Command command = mCommands.get(cmd);
+    Command command = getCommand(cmd);
 
     if (command == null) {
       // Unknown command (we didn't find the cmd in our dict)
-      System.err.println(String.format("%s is an unknown command.", cmd));
+      mErr.println(String.format("%s is an unknown command.", cmd));
       printUsage();
       return -1;
     }
@@ -63,25 +87,17 @@ public abstract class AbstractShell implements Closeable {
     try {
       String[] currArgs = Arrays.copyOf(argv, argv.length);
       while (command.hasSubCommand()) {
-        if (currArgs.length < 2) {
-          throw new IllegalArgumentException("No sub-command is specified");
-        }
-        if (!command.getSubCommands().containsKey(currArgs[1])) {
-          throw new IllegalArgumentException("Unknown sub-command: " + currArgs[1]);
-        }
-        command = command.getSubCommands().get(currArgs[1]);
-        if (currArgs.length >= 2) {
-          currArgs = Arrays.copyOfRange(currArgs, 1, currArgs.length);
-        }
+        command = getSubCommand(command, currArgs);
+        currArgs = Arrays.copyOfRange(currArgs, 1, currArgs.length);
       }
       currArgs = Arrays.copyOfRange(currArgs, 1, currArgs.length);
 
       cmdline = command.parseAndValidateArgs(currArgs);
     } catch (IllegalArgumentException e) {
       // It outputs a prompt message when passing wrong args to CLI
-      System.out.println(e.getMessage());
-      System.out.println("Usage: " + command.getUsage());
-      System.out.println(command.getDescription());
+      mOut.println(e.getMessage());
+      mOut.println("Usage: " + command.getUsage());
+      mOut.println(command.getDescription());
       LOG.error("Invalid arguments for command {}:", command.getCommandName(), e);
       return -1;
     }
@@ -90,17 +106,190 @@ public abstract class AbstractShell implements Closeable {
     try {
       return command.run(cmdline);
     } catch (Exception e) {
-      System.out.println(e.getMessage());
+      mOut.println(e.getMessage());
       LOG.error("Error running " + StringUtils.join(argv, " "), e);
       return -1;
     }
   }
 
   /**
+   * Finds the inner-most command of the arguments and parses its arguments, without running it.
+   *
+   * @param argv the command name, its sub-command names and its arguments
+   * @return the parsed arguments of the inner-most command
+   * @throws IllegalArgumentException if the command is unknown or the arguments are invalid
+   */
+  public CommandLine parse(String... argv) throws IllegalArgumentException {
+    if (argv.length == 0) {
+      throw new IllegalArgumentException("No command is specified");
+    }
+    Command command = getCommand(argv[0]);
+    if (command == null) {
+      throw new IllegalArgumentException(String.format("%s is an unknown command.", argv[0]));
+    }
+    String[] currArgs = Arrays.copyOf(argv, argv.length);
+    while (command.hasSubCommand()) {
+      command = getSubCommand(command, currArgs);
+      currArgs = Arrays.copyOfRange(currArgs, 1, currArgs.length);
+    }
+    return command.parseAndValidateArgs(Arrays.copyOfRange(currArgs, 1, currArgs.length));
+  }
+
+  /**
+   * Finds the inner-most command of the arguments, without parsing its arguments.
+   *
+   * @param argv the command name, its sub-command names and its arguments
+   * @return the inner-most command
+   * @throws IllegalArgumentException if the command is unknown
+   */
+  public Command findCommand(String... argv) throws IllegalArgumentException {
+    if (argv.length == 0) {
+      throw new IllegalArgumentException("No command is specified");
+    }
+    Command command = getCommand(argv[0]);
+    if (command == null) {
+      throw new IllegalArgumentException(String.format("%s is an unknown command.", argv[0]));
+    }
+    String[] currArgs = Arrays.copyOf(argv, argv.length);
+    while (command.hasSubCommand()) {
+      command = getSubCommand(command, currArgs);
+      currArgs = Arrays.copyOfRange(currArgs, 1, currArgs.length);
+    }
+    return command;
+  }
+
+  private static Command getSubCommand(Command command, String[] args) {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("No sub-command is specified");
+    }
+    if (!command.getSubCommands().containsKey(args[1])) {
+      throw new IllegalArgumentException("Unknown sub-command: " + args[1]);
+    }
+    return command.getSubCommands().get(args[1]);
+  }
+
+  /**
+   * Runs the commands read from the input one line at a time, until the input ends or the user
+   * quits. All the commands run by this shell, so the commands, their connections and the
+   * discovered groups and leaders stay in memory between them.
+   *
+   * @param reader the reader of the commands
+   * @param prompt whether to print a prompt before reading every command
+   * @return the exit code of the last command
+   */
+  public int runInteractive(BufferedReader reader, boolean prompt) throws IOException {
+    int ret = 0;
+    while (true) {
+      if (prompt) {
+        mOut.print("ratis " + getShellName() + "> ");
+        mOut.flush();
+      }
+      String line = reader.readLine();
+      if (line == null) {
+        break;
+      }
+      List<String> args;
+      try {
+        args = tokenize(line);
+      } catch (IllegalArgumentException e) {
+        mOut.println(e.getMessage());
+        ret = -1;
+        continue;
+      }
+      if (args.isEmpty()) {
+        continue;
+      }
+      String cmd = args.get(0);
+      if (cmd.equals("exit") || cmd.equals("quit")) {
+        break;
+      }
+      if (cmd.equals("help")) {
+        printUsage();
+        mOut.println("\t [exit]");
+        continue;
+      }
+      ret = run(args.toArray(new String[0]));
+    }
+    return ret;
+  }
+
+  /**
+   * Splits a command line into its arguments, on the whitespaces out of single or double quotes.
+   *
+   * @param line the command line
+   * @return the arguments
+   * @throws IllegalArgumentException if a quote is not closed
+   */
+  public static List<String> tokenize(String line) {
+    List<String> args = new ArrayList<>();
+    StringBuilder arg = null;
+    char quote = 0;
+    for (char c : line.toCharArray()) {
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          arg.append(c);
+        }
+      } else if (Character.isWhitespace(c)) {
+        if (arg != null) {
+          args.add(arg.toString());
+          arg = null;
+        }
+      } else {
+        if (arg == null) {
+          arg = new StringBuilder();
+        }
+        if (c == '\'' || c == '"') {
+          quote = c;
+        } else {
+          arg.append(c);
+        }
+      }
+    }
+    if (quote != 0) {
+      throw new IllegalArgumentException("Unclosed quote in: " + line);
+    }
+    if (arg != null) {
+      args.add(arg.toString());
+    }
+    return args;
+  }
+
+  /**
+   * Gets a command, instantiating it on first use.
+   *
+   * @param name the command name
+   * @return the command, or null if there is no such command
+   */
+  @Nullable
+  protected Command getCommand(String name) {
+    CommandDescriptor descriptor = getCommandDescriptors().get(name);
+    if (descriptor == null) {
+      return null;
+    }
+    // Register the instantiated command under closer.
+    return mCommands.computeIfAbsent(name, (key) -> mCloser.register(descriptor.create()));
+  }
+
+  /**
+   * Note that this instantiates all the commands of the shell.
+   *
    * @return all commands provided by this shell
    */
   public Collection<Command> getCommands() {
-    return mCommands.values();
+    return getCommandDescriptors().keySet().stream()
+        .map(this::getCommand)
+        .collect(Collectors.toList());
+  }
+
+  private Map<String, CommandDescriptor> getCommandDescriptors() {
+    if (mCommandDescriptors == null) {
+      try (PhaseTimer.Phase phase = PhaseTimer.phase("loadCommands")) {
+        mCommandDescriptors = loadCommands();
+      }
+    }
+    return mCommandDescriptors;
   }
 
   @Override
@@ -114,20 +303,21 @@ public abstract class AbstractShell implements Closeable {
   protected abstract String getShellName();
 
   /**
-   * Map structure: Command name => {@link Command} instance.
+   * Map structure: Command name => {@link CommandDescriptor} of the command.
    *
    * @return a set of commands which can be executed under this shell
    */
-  protected abstract Map<String, Command> loadCommands();
+  protected abstract Map<String, CommandDescriptor> loadCommands();
 
   /**
    * Prints usage for all commands.
    */
   protected void printUsage() {
-    System.out.println("Usage: ratis " + getShellName() + " [generic options]");
-    SortedSet<String> sortedCmds = new TreeSet<>(mCommands.keySet());
+    mOut.println("Usage: ratis " + getShellName() + " [generic options]");
+    Map<String, CommandDescriptor> descriptors = getCommandDescriptors();
+    SortedSet<String> sortedCmds = new TreeSet<>(descriptors.keySet());
     for (String cmd : sortedCmds) {
-      System.out.format("%-60s%n", "\t [" + mCommands.get(cmd).getUsage() + "]");
+      mOut.format("%-60s%n", "\t [" + descriptors.get(cmd).getUsage() + "]");
     }
   }
 }
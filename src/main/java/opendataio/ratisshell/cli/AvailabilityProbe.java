@@ -0,0 +1,168 @@
+package opendataio.ratisshell.cli;
+
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.retry.RetryPolicies;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the availability of a group as its clients see it, by sending a request to the group
+ * one after another in the background until it is closed, through a client of its own.
+ *
+ * The requests are watch requests of the first log index, which are served by the leader as soon
+ * as it receives them, without writing to the log or querying the state machine, so they work
+ * with any state machine. Every request is tried once, so a request sent while the group has no
+ * leader fails or waits for the new leader, and the longest time between two served requests
+ * bounds the time the group has no leader.
+ */
+@ThreadSafe
+public final class AvailabilityProbe implements Closeable {
+  private static final long INTERVAL_MS = 10;
+  private static final long REQUEST_TIMEOUT_MS = 1_000;
+
+  private final RaftClient mClient;
+  private final Thread mThread;
+  /** The latencies in milliseconds of the served requests, guarded by this. */
+  private final List<Long> mLatenciesMs = new ArrayList<>();
+  /** The number of failed requests, guarded by this. */
+  private int mFailures;
+  /** When the last request was served, or 0 if none is served, guarded by this. */
+  private long mLastServedNanos;
+  /** The longest time in nanoseconds between two served requests, guarded by this. */
+  private long mLongestGapNanos;
+  private volatile boolean mClosed;
+
+  /**
+   * Starts probing a group.
+   *
+   * @param group the group
+   * @param leaderId the leader of the group if it is known, otherwise null
+   */
+  public AvailabilityProbe(RaftGroup group, @Nullable RaftPeerId leaderId) {
+    ClientId clientId = ClientId.randomId();
+    mClient = RaftUtils.createClient(group, leaderId, clientId,
+        RaftUtils.createClientRpc(clientId, REQUEST_TIMEOUT_MS), RetryPolicies.noRetry());
+    mThread = new Thread(this::probe, "ratis-shell-probe");
+    mThread.setDaemon(true);
+    mThread.start();
+  }
+
+  private void probe() {
+    while (!mClosed) {
+      long startNanos = System.nanoTime();
+      boolean served;
+      try {
+        RaftClientReply reply = mClient.io().watch(0, ReplicationLevel.MAJORITY);
+        served = reply.isSuccess();
+      } catch (IOException e) {
+        served = false;
+      }
+      long endNanos = System.nanoTime();
+      synchronized (this) {
+        if (served) {
+          mLatenciesMs.add(TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+          if (mLastServedNanos != 0) {
+            mLongestGapNanos = Math.max(mLongestGapNanos, endNanos - mLastServedNanos);
+          }
+          mLastServedNanos = endNanos;
+          notifyAll();
+        } else {
+          mFailures++;
+        }
+      }
+      try {
+        Thread.sleep(INTERVAL_MS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Waits until a request sent from now on is served.
+   *
+   * @param timeoutMs the time in milliseconds to wait at most
+   * @return whether a request is served in time
+   */
+  public synchronized boolean awaitServed(long timeoutMs) throws InterruptedIOException {
+    long sinceNanos = System.nanoTime();
+    long deadlineNanos = sinceNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    while (mLastServedNanos - sinceNanos <= 0) {
+      long remainingNanos = deadlineNanos - System.nanoTime();
+      if (remainingNanos <= 0) {
+        return false;
+      }
+      try {
+        TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the group to serve");
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of requests sent so far
+   */
+  public synchronized int getRequests() {
+    return mLatenciesMs.size() + mFailures;
+  }
+
+  /**
+   * @return the number of failed requests so far
+   */
+  public synchronized int getFailures() {
+    return mFailures;
+  }
+
+  /**
+   * @param percentile the percentile, between 0 and 100
+   * @return the latency in milliseconds of the served requests at the percentile, or -1 if no
+   *         request is served
+   */
+  public synchronized long getLatencyMs(double percentile) {
+    if (mLatenciesMs.isEmpty()) {
+      return -1;
+    }
+    List<Long> sorted = new ArrayList<>(mLatenciesMs);
+    Collections.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+    return sorted.get(Math.min(Math.max(index, 0), sorted.size() - 1));
+  }
+
+  /**
+   * @return the longest time in milliseconds between two served requests so far
+   */
+  public synchronized long getLongestGapMs() {
+    return TimeUnit.NANOSECONDS.toMillis(mLongestGapNanos);
+  }
+
+  /**
+   * Stops probing, once the request in progress completes.
+   */
+  @Override
+  public void close() throws IOException {
+    mClosed = true;
+    try {
+      mThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while stopping the probe");
+    }
+    mClient.close();
+  }
+}
@@ -0,0 +1,49 @@
+package opendataio.ratisshell.cli;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.function.Supplier;
+
+/**
+ * A lightweight description of a {@link Command}, which allows a shell to list its commands
+ * without loading or instantiating them.
+ */
+@ThreadSafe
+public final class CommandDescriptor {
+  private final String mName;
+  private final String mUsage;
+  private final Supplier<Command> mFactory;
+
+  /**
+   * @param name the command name
+   * @param usage the usage information of the command
+   * @param factory the factory to create the command
+   */
+  public CommandDescriptor(String name, String usage, Supplier<Command> factory) {
+    mName = Preconditions.checkNotNull(name, "name");
+    mUsage = Preconditions.checkNotNull(usage, "usage");
+    mFactory = Preconditions.checkNotNull(factory, "factory");
+  }
+
+  /**
+   * @return the command name
+   */
+  public String getName() {
+    return mName;
+  }
+
+  /**
+   * @return the usage information of the command
+   */
+  public String getUsage() {
+    return mUsage;
+  }
+
+  /**
+   * @return a new instance of the command
+   */
+  public Command create() {
+    return mFactory.get();
+  }
+}
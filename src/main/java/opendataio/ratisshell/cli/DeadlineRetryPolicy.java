@@ -0,0 +1,44 @@
+package opendataio.ratisshell.cli;
+
+import opendataio.ratisshell.util.Deadline;
+import org.apache.ratis.retry.RetryPolicy;
+import org.apache.ratis.util.TimeDuration;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A retry policy which retries with an exponential backoff until a deadline, and never sleeps
+ * past the deadline, so the requests of a command are given up when the command runs out of time.
+ */
+@ThreadSafe
+public final class DeadlineRetryPolicy implements RetryPolicy {
+  private static final long BASE_SLEEP_MS = 200;
+  private static final long MAX_SLEEP_MS = 5_000;
+
+  private final Deadline mDeadline;
+
+  /**
+   * @param deadline the deadline to retry until
+   */
+  public DeadlineRetryPolicy(Deadline deadline) {
+    mDeadline = deadline;
+  }
+
+  @Override
+  public Action handleAttemptFailure(Event event) {
+    long remainingMs = mDeadline.getRemainingMs();
+    if (remainingMs == 0) {
+      return NO_RETRY_ACTION;
+    }
+    // the shift is bounded so that it does not overflow
+    long backoffMs = BASE_SLEEP_MS << Math.min(Math.max(event.getAttemptCount() - 1, 0), 10);
+    long sleepMs = Math.min(Math.min(backoffMs, MAX_SLEEP_MS), remainingMs);
+    return () -> TimeDuration.valueOf(sleepMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(remaining=" + mDeadline.getRemainingMs() + "ms)";
+  }
+}
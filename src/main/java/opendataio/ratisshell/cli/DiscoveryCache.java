@@ -0,0 +1,250 @@
+package opendataio.ratisshell.cli;
+
+import com.google.common.hash.Hashing;
+import opendataio.ratisshell.conf.PropertyKey;
+import opendataio.ratisshell.conf.RatisShellConfiguration;
+import opendataio.ratisshell.util.ConfigurationUtils;
+import org.apache.ratis.proto.RaftProtos.RaftGroupProto;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.ProtoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An on-disk cache of the raft groups discovered by the shell commands, so that the following
+ * commands targeting the same peers can skip the discovery round trips.
+ *
+ * The cache has two kinds of entries, each stored in its own properties file under the cache
+ * directory. The entries of the groups hold the peers of a group, and are keyed and invalidated by
+ * the group id, so a change of the group invalidates its peers whatever options the command making
+ * the change was given. The entries of the targets map the options of a command, such as its
+ * peers, to the id and the last known leader of the group they target. A target whose group is
+ * invalidated still gives the group id and the leader, but not the peers. The entries expire after
+ * the configured time to live, and are also kept in memory, so a long running shell does not read
+ * them from the disk again.
+ */
+@ThreadSafe
+public final class DiscoveryCache {
+  private static final Logger LOG = LoggerFactory.getLogger(DiscoveryCache.class);
+
+  private static final String KEY = "key";
+  private static final String GROUP = "group";
+  private static final String GROUP_ID = "group.id";
+  private static final String LEADER = "leader";
+  private static final String TIMESTAMP = "timestamp";
+
+  /** The entries read or written by this process, keyed by the path of their files. */
+  private static final Map<String, Properties> ENTRIES = new ConcurrentHashMap<>();
+
+  private final File mDir;
+  private final long mTtlMs;
+
+  /**
+   * @param dir the directory to store the cache entries
+   * @param ttlMs the time to live of the cache entries in milliseconds, 0 disables the cache
+   */
+  public DiscoveryCache(File dir, long ttlMs) {
+    mDir = dir;
+    mTtlMs = ttlMs;
+  }
+
+  /**
+   * Creates a discovery cache from the configuration.
+   *
+   * @param conf the configuration
+   * @return the discovery cache
+   */
+  public static DiscoveryCache create(RatisShellConfiguration conf) {
+    return new DiscoveryCache(new File(conf.get(PropertyKey.DISCOVERY_CACHE_DIR)),
+        conf.getLong(PropertyKey.DISCOVERY_CACHE_TTL_MS));
+  }
+
+  /**
+   * @return whether the cache is enabled
+   */
+  public boolean isEnabled() {
+    return mTtlMs > 0;
+  }
+
+  /**
+   * Gets the unexpired cache entry of a target.
+   *
+   * @param key the cache key of the target
+   * @return the cache entry, or null if there is no unexpired entry for the key
+   */
+  @Nullable
+  public Entry get(String key) {
+    Properties target = read(key);
+    if (target == null) {
+      return null;
+    }
+    try {
+      RaftGroupId groupId = RaftGroupId.valueOf(UUID.fromString(target.getProperty(GROUP_ID)));
+      String leader = target.getProperty(LEADER);
+      Properties properties = read(getGroupKey(groupId));
+      RaftGroup group = properties == null ? null : ProtoUtils.toRaftGroup(
+          RaftGroupProto.parseFrom(Base64.getDecoder().decode(properties.getProperty(GROUP))));
+      return new Entry(groupId, group, leader == null ? null : RaftPeerId.valueOf(leader));
+    } catch (Exception e) {
+      LOG.warn("Ignoring corrupted discovery cache entry of {}: {}", key, e.toString());
+      return null;
+    }
+  }
+
+  /**
+   * Puts a discovered raft group into the cache.
+   *
+   * @param key the cache key of the target
+   * @param group the discovered raft group
+   * @param leaderId the last known leader of the group, or null if it is unknown
+   */
+  public void put(String key, RaftGroup group, @Nullable RaftPeerId leaderId) {
+    if (!isEnabled()) {
+      return;
+    }
+    Properties target = new Properties();
+    target.setProperty(GROUP_ID, group.getGroupId().getUuid().toString());
+    if (leaderId != null) {
+      target.setProperty(LEADER, leaderId.toString());
+    }
+    write(key, target);
+    Properties properties = new Properties();
+    properties.setProperty(GROUP, Base64.getEncoder().encodeToString(
+        ProtoUtils.toRaftGroupProtoBuilder(group).build().toByteArray()));
+    write(getGroupKey(group.getGroupId()), properties);
+  }
+
+  /**
+   * Removes the peers of a group from the cache, the targets of the group keep its id and its
+   * leader.
+   *
+   * @param groupId the group id
+   */
+  public void invalidate(RaftGroupId groupId) {
+    File file = getFile(getGroupKey(groupId));
+    ENTRIES.remove(file.getPath());
+    if (file.exists() && !file.delete()) {
+      LOG.warn("Failed to delete discovery cache entry {}", file);
+    }
+  }
+
+  @Nullable
+  private Properties read(String key) {
+    if (!isEnabled()) {
+      return null;
+    }
+    File file = getFile(key);
+    // the entry may have been invalidated by another process
+    if (!file.exists()) {
+      ENTRIES.remove(file.getPath());
+      return null;
+    }
+    Properties properties = ENTRIES.get(file.getPath());
+    if (properties == null) {
+      properties = ConfigurationUtils.loadPropertiesFromFile(file.getPath());
+      if (properties == null || !key.equals(properties.getProperty(KEY))) {
+        return null;
+      }
+    }
+    try {
+      if (isExpired(Long.parseLong(properties.getProperty(TIMESTAMP)))) {
+        ENTRIES.remove(file.getPath(), properties);
+        return null;
+      }
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring corrupted discovery cache entry {}: {}", file, e.toString());
+      return null;
+    }
+    ENTRIES.put(file.getPath(), properties);
+    return properties;
+  }
+
+  private void write(String key, Properties properties) {
+    properties.setProperty(KEY, key);
+    properties.setProperty(TIMESTAMP, String.valueOf(System.currentTimeMillis()));
+    File file = getFile(key);
+    ENTRIES.put(file.getPath(), properties);
+    try {
+      if (!mDir.isDirectory() && !mDir.mkdirs() && !mDir.isDirectory()) {
+        throw new IOException("Failed to create directory " + mDir);
+      }
+      // write to a temporary file first, so that concurrent readers never see a partial entry
+      File tmp = File.createTempFile(file.getName(), ".tmp", mDir);
+      try (OutputStream out = new FileOutputStream(tmp)) {
+        properties.store(out, null);
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Failed to write discovery cache entry {}: {}", file, e.toString());
+    }
+  }
+
+  private static String getGroupKey(RaftGroupId groupId) {
+    return "group/" + groupId.getUuid();
+  }
+
+  private boolean isExpired(long timestamp) {
+    return System.currentTimeMillis() - timestamp > mTtlMs;
+  }
+
+  private File getFile(String key) {
+    return new File(mDir,
+        Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString() + ".properties");
+  }
+
+  /**
+   * A cached discovery result.
+   */
+  public static final class Entry {
+    private final RaftGroupId mGroupId;
+    private final RaftGroup mGroup;
+    private final RaftPeerId mLeaderId;
+
+    private Entry(RaftGroupId groupId, @Nullable RaftGroup group, @Nullable RaftPeerId leaderId) {
+      mGroupId = groupId;
+      mGroup = group;
+      mLeaderId = leaderId;
+    }
+
+    /**
+     * @return the id of the discovered raft group
+     */
+    public RaftGroupId getGroupId() {
+      return mGroupId;
+    }
+
+    /**
+     * @return the discovered raft group, or null if it is invalidated
+     */
+    @Nullable
+    public RaftGroup getGroup() {
+      return mGroup;
+    }
+
+    /**
+     * @return the last known leader of the group, or null if it is unknown
+     */
+    @Nullable
+    public RaftPeerId getLeaderId() {
+      return mLeaderId;
+    }
+  }
+}
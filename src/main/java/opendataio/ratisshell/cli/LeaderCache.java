@@ -0,0 +1,63 @@
+package opendataio.ratisshell.cli;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.protocol.exceptions.NotLeaderException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A cache of the last known leader of each raft group, used as the leader hint when creating
+ * a {@link org.apache.ratis.client.RaftClient}, so that the first request does not have to be
+ * redirected by a follower.
+ */
+@ThreadSafe
+public final class LeaderCache {
+  private static final Cache<RaftGroupId, RaftPeerId> LEADERS = CacheBuilder.newBuilder()
+      .maximumSize(1024)
+      .build();
+
+  private LeaderCache() {} // prevent instantiation
+
+  /**
+   * @param groupId the raft group id
+   * @return the last known leader of the group, or null if it is unknown
+   */
+  @Nullable
+  public static RaftPeerId get(RaftGroupId groupId) {
+    return LEADERS.getIfPresent(groupId);
+  }
+
+  /**
+   * Updates the last known leader of a group.
+   *
+   * @param groupId the raft group id
+   * @param leaderId the leader id, the leader is forgotten if it is null
+   */
+  public static void update(RaftGroupId groupId, @Nullable RaftPeerId leaderId) {
+    if (leaderId == null) {
+      LEADERS.invalidate(groupId);
+    } else {
+      LEADERS.put(groupId, leaderId);
+    }
+  }
+
+  /**
+   * Updates the last known leader of a group from the leader suggested by a not leader reply.
+   *
+   * @param reply the reply of a request sent to the group
+   */
+  public static void update(RaftClientReply reply) {
+    NotLeaderException e = reply.getNotLeaderException();
+    if (e == null) {
+      return;
+    }
+    RaftPeer suggestedLeader = e.getSuggestedLeader();
+    update(reply.getRaftGroupId(), suggestedLeader == null ? null : suggestedLeader.getId());
+  }
+}
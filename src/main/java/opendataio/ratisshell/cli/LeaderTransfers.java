@@ -0,0 +1,349 @@
+package opendataio.ratisshell.cli;
+
+import opendataio.ratisshell.RetryUtil;
+import opendataio.ratisshell.util.Deadline;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.protocol.GroupInfoReply;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.protocol.exceptions.TimeoutIOException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the leadership of raft groups and waits for configuration changes to take effect, on
+ * behalf of a shell command and within its deadline.
+ */
+public final class LeaderTransfers {
+  private final Deadline mDeadline;
+  private final long mAttemptTimeoutMs;
+  private final PrintStream mPrintStream;
+
+  /**
+   * @param deadline the deadline of the command
+   * @param attemptTimeoutMs the time in milliseconds to wait at most for one peer to answer
+   * @param printStream the stream to print the progress to
+   */
+  public LeaderTransfers(Deadline deadline, long attemptTimeoutMs, PrintStream printStream) {
+    mDeadline = deadline;
+    mAttemptTimeoutMs = attemptTimeoutMs;
+    mPrintStream = printStream;
+  }
+
+  /**
+   * Raises the priority of a peer above the other peers of a group, so that the peer keeps the
+   * leadership once it is transferred to it.
+   *
+   * @param client the client of the group
+   * @param peers the peers of the group
+   * @param leaderId the peer to give the highest priority to
+   * @return the reply of the configuration change
+   */
+  public RaftClientReply setLeaderPriority(RaftClient client, Collection<RaftPeer> peers,
+      RaftPeerId leaderId) throws IOException {
+    List<RaftPeer> peersWithNewPriorities = peers.stream()
+        .map(peer -> RaftPeer.newBuilder(peer)
+            .setPriority(peer.getId().equals(leaderId) ? 2 : 1)
+            .build())
+        .collect(Collectors.toList());
+    return call("set configuration",
+        () -> client.admin().setConfiguration(peersWithNewPriorities));
+  }
+
+  /**
+   * Transfers the leadership of a group to a peer, once its priority is the highest.
+   *
+   * The transfer starts as soon as the configuration raising the priority of the peer is
+   * committed on a majority of the peers including the new leader, and completes once the new
+   * leader reports itself as the leader.
+   *
+   * @param client the client of the group
+   * @param group the group
+   * @param configurationReply the reply of the configuration change raising the priority
+   * @param leaderId the new leader
+   * @return the outcome of the transfer
+   */
+  public LeaderTransfer transferLeadership(RaftClient client, RaftGroup group,
+      RaftClientReply configurationReply, RaftPeerId leaderId) throws IOException {
+    long startNanos = System.nanoTime();
+    awaitConfiguration(client, group, configurationReply, leaderId);
+    long transferNanos = System.nanoTime();
+    long configurationWaitMs = TimeUnit.NANOSECONDS.toMillis(transferNanos - startNanos);
+    RaftClientReply reply = call("transfer leadership",
+        () -> client.admin().transferLeadership(leaderId, mDeadline.cap(60_000)));
+    if (!reply.isSuccess()) {
+      return new LeaderTransfer(reply, configurationWaitMs, -1);
+    }
+    return new LeaderTransfer(reply, configurationWaitMs,
+        awaitLeader(client, group.getGroupId(), leaderId, transferNanos));
+  }
+
+  /**
+   * Restores the priorities of a group after a failed transfer, within a time budget of its own,
+   * as the failure may come from the deadline of the command.
+   *
+   * @param client the client of the group
+   * @param group the group with its priorities before the transfer
+   * @param addressPriorityMap the priorities set for the transfer
+   * @return what is done
+   */
+  public String restorePriorities(RaftClient client, RaftGroup group,
+      Map<String, Integer> addressPriorityMap) {
+    List<RaftPeer> peers = new ArrayList<>(group.getPeers());
+    String cause;
+    try {
+      RaftClientReply reply = RetryUtil.join(RetryUtil.call("restore the priorities",
+          () -> client.admin().setConfiguration(peers),
+          Deadline.after(mAttemptTimeoutMs)));
+      if (reply.isSuccess()) {
+        return "restored the priorities";
+      }
+      cause = String.valueOf(reply.getException());
+    } catch (IOException e) {
+      cause = e.getMessage();
+    }
+    return String.format("the priorities are left changed to %s, failed to restore them: %s",
+        addressPriorityMap, cause);
+  }
+
+  /**
+   * Waits until a configuration change is committed on a majority of the peers of a group,
+   * including the given peer, as the leader knows it.
+   */
+  private void awaitConfiguration(RaftClient client, RaftGroup group,
+      RaftClientReply configurationReply, RaftPeerId peerId) throws IOException {
+    // the configuration is committed when the leader replies, so it is not after the commit
+    // index of the leader at that time
+    long index = configurationReply.getCommitInfos().stream()
+        .mapToLong(CommitInfoProto::getCommitIndex)
+        .max()
+        .orElse(configurationReply.getLogIndex());
+    int majority = group.getPeers().size() / 2 + 1;
+    RaftPeerId leaderId = configurationReply.getServerId();
+    for (int attempt = 0; true; attempt++) {
+      GroupInfoReply reply = call("get group info",
+          () -> client.getGroupManagementApi(leaderId).info(group.getGroupId()));
+      if (reply.isSuccess()) {
+        Map<RaftPeerId, Long> commitIndexes = RaftUtils.getCommitIndexes(reply);
+        long committed = commitIndexes.values().stream().filter(i -> i >= index).count();
+        if (committed >= majority && commitIndexes.getOrDefault(peerId, -1L) >= index) {
+          return;
+        }
+      }
+      awaitNextPoll(attempt,
+          String.format("the configuration at index %d is not committed on %s", index, peerId));
+    }
+  }
+
+  /**
+   * Waits until a peer reports itself as the leader of a group.
+   *
+   * @param transferNanos when the transfer started
+   * @return the time in milliseconds from the start of the transfer to the election of the peer,
+   *         which bounds the time the group has no leader
+   */
+  private long awaitLeader(RaftClient client, RaftGroupId groupId, RaftPeerId leaderId,
+      long transferNanos) throws IOException {
+    for (int attempt = 0; true; attempt++) {
+      GroupInfoReply reply = call("get group info",
+          () -> client.getGroupManagementApi(leaderId).info(groupId));
+      long nowNanos = System.nanoTime();
+      if (reply.isSuccess() && reply.getRoleInfoProto().getRole() == RaftPeerRole.LEADER) {
+        long electedNanos = nowNanos
+            - TimeUnit.MILLISECONDS.toNanos(reply.getRoleInfoProto().getRoleElapsedTimeMs());
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(electedNanos - transferNanos));
+      }
+      awaitNextPoll(attempt, leaderId + " does not report itself as the leader");
+    }
+  }
+
+  /**
+   * Sleeps before polling a group again, a little longer after every attempt.
+   *
+   * @param attempt the number of the attempts so far
+   * @param timeoutMessage the error message if the deadline is reached
+   */
+  private void awaitNextPoll(int attempt, String timeoutMessage) throws IOException {
+    if (mDeadline.isExpired()) {
+      throw new TimeoutIOException(timeoutMessage + " by the deadline");
+    }
+    try {
+      Thread.sleep(mDeadline.cap(Math.min(20L << Math.min(attempt, 5), 500)));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting: " + timeoutMessage);
+    }
+  }
+
+  /**
+   * Waits until new peers of a group catch up with the group, printing their progress at a fixed
+   * interval: their commit index compared to the commit index of the group, the rate at which
+   * they catch up, and the estimated time left.
+   *
+   * @param client the client of the group
+   * @param group the group, without the new peers
+   * @param peerIds the new peers
+   * @param change the configuration change adding the new peers, which completes once the leader
+   *        has brought them in the configuration
+   * @param maxLag the number of committed entries a new peer may lack once caught up
+   * @param intervalMs the time in milliseconds between two progress reports
+   * @return the reply of the configuration change, once the change is complete and, if it
+   *         succeeds, the new peers are caught up
+   */
+  public RaftClientReply awaitCatchUp(RaftClient client, RaftGroup group,
+      List<RaftPeerId> peerIds, CompletableFuture<RaftClientReply> change, long maxLag,
+      long intervalMs) throws IOException {
+    RaftGroupId groupId = group.getGroupId();
+    List<RaftPeerId> groupPeerIds = group.getPeers().stream()
+        .map(RaftPeer::getId)
+        .collect(Collectors.toList());
+    RaftPeerId leaderId = LeaderCache.get(groupId);
+    if (leaderId != null && groupPeerIds.remove(leaderId)) {
+      groupPeerIds.add(0, leaderId);
+    }
+    long startNanos = System.nanoTime();
+    long previousNanos = startNanos;
+    Map<RaftPeerId, Long> previousIndexes = new HashMap<>();
+    while (true) {
+      boolean changed = change.isDone();
+      if (changed && !RetryUtil.join(change).isSuccess()) {
+        return RetryUtil.join(change);
+      }
+      if (mDeadline.isExpired()) {
+        if (changed) {
+          throw new TimeoutIOException(String.format("the configuration change is complete, "
+              + "but the new peers %s are not caught up by the deadline", peerIds));
+        }
+        // the leader may still apply the change, only the waiting for it is given up
+        change.cancel(true);
+        throw new TimeoutIOException(String.format("the new peers %s are not caught up by the "
+            + "deadline, and the configuration change adding them is still pending: it may "
+            + "complete after the command exits", peerIds));
+      }
+      List<CompletableFuture<GroupInfoReply>> peerInfos = new ArrayList<>();
+      for (RaftPeerId peerId : peerIds) {
+        peerInfos.add(RetryUtil.failover("get info from " + peerId,
+            Collections.singletonList(peerId),
+            p -> client.getGroupManagementApi(p).info(groupId),
+            mDeadline, mAttemptTimeoutMs, PeerHealth.listener()));
+      }
+      // the group info is asked to the leader first, as it knows the commit index of the group
+      Map<RaftPeerId, Long> groupIndexes = RaftUtils.getCommitIndexes(RetryUtil.join(
+          RetryUtil.failover("get group info", groupPeerIds,
+              p -> client.getGroupManagementApi(p).info(groupId),
+              mDeadline, mAttemptTimeoutMs, PeerHealth.listener())));
+      long groupIndex = groupIndexes.values().stream().mapToLong(Long::longValue).max()
+          .orElse(-1);
+      long nowNanos = System.nanoTime();
+      double elapsedSeconds = (nowNanos - previousNanos) / 1e9;
+      mPrintStream.printf("[%.1f s] configuration change %s, commit index of the group %d%n",
+          (nowNanos - startNanos) / 1e9,
+          changed ? "complete" : "in progress", groupIndex);
+      boolean caughtUp = true;
+      for (int i = 0; i < peerIds.size(); i++) {
+        RaftPeerId peerId = peerIds.get(i);
+        long index = -1;
+        try {
+          GroupInfoReply reply = RetryUtil.join(peerInfos.get(i));
+          if (reply.isSuccess()) {
+            index = RaftUtils.getCommitIndexes(reply).getOrDefault(peerId, -1L);
+          }
+        } catch (IOException e) {
+          // fall back to the commit index known by the leader
+        }
+        if (index < 0) {
+          // the leader knows the commit index of the peer once it replicates to it
+          index = groupIndexes.getOrDefault(peerId, -1L);
+        }
+        if (index < 0) {
+          caughtUp = false;
+          mPrintStream.printf("  %s: commit index unknown%n", peerId);
+          continue;
+        }
+        long lag = Math.max(groupIndex - index, 0);
+        caughtUp &= lag <= maxLag;
+        Long previousIndex = previousIndexes.put(peerId, index);
+        if (previousIndex == null || elapsedSeconds <= 0) {
+          mPrintStream.printf("  %s: commit index %d, lag %d entries%n", peerId, index, lag);
+          continue;
+        }
+        double rate = (index - previousIndex) / elapsedSeconds;
+        mPrintStream.printf("  %s: commit index %d, lag %d entries, %.0f entries/s, ETA %s%n",
+            peerId, index, lag, rate,
+            lag <= maxLag ? "caught up" : rate > 0 ? Math.round(lag / rate) + " s" : "unknown");
+      }
+      previousNanos = nowNanos;
+      if (changed && caughtUp) {
+        return RetryUtil.join(change);
+      }
+      try {
+        Thread.sleep(mDeadline.cap(intervalMs));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the new peers");
+      }
+    }
+  }
+
+  /**
+   * Sends a request through the raft client, cancelled if it is not served by the deadline.
+   */
+  private <R> R call(String operation, Callable<R> request) throws IOException {
+    return RetryUtil.join(RetryUtil.call(operation, request, mDeadline));
+  }
+
+  /**
+   * The outcome of a leadership transfer.
+   */
+  public static final class LeaderTransfer {
+    private final RaftClientReply mReply;
+    private final long mConfigurationWaitMs;
+    private final long mLeaderlessMs;
+
+    LeaderTransfer(RaftClientReply reply, long configurationWaitMs, long leaderlessMs) {
+      mReply = reply;
+      mConfigurationWaitMs = configurationWaitMs;
+      mLeaderlessMs = leaderlessMs;
+    }
+
+    /**
+     * @return the reply of the transfer
+     */
+    public RaftClientReply getReply() {
+      return mReply;
+    }
+
+    /**
+     * @return the time in milliseconds waited for the configuration change to be committed
+     *         before the transfer
+     */
+    public long getConfigurationWaitMs() {
+      return mConfigurationWaitMs;
+    }
+
+    /**
+     * @return the time in milliseconds from the start of the transfer to the election of the new
+     *         leader, which bounds the time the group has no leader, or -1 if the transfer failed
+     */
+    public long getLeaderlessMs() {
+      return mLeaderlessMs;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package opendataio.ratisshell.cli;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import opendataio.ratisshell.util.Deadline;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Parses and resolves the addresses of the peers.
+ *
+ * The host names of the peers are resolved all at once in the background, and the command waits
+ * for them at most a bounded time: a host name not resolved in time is left unresolved, and is
+ * resolved by the rpc client when connecting to the peer, so one slow resolver never blocks the
+ * command. The resolved host names are kept in memory for a while, so they are reused by the
+ * following commands of a daemon or an interactive shell.
+ */
+@ThreadSafe
+public final class PeerAddresses {
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ratis-shell-dns-%d").build());
+
+  /** The resolutions of the host names, including the ones in progress, keyed by host name. */
+  private static final Map<String, Resolution> RESOLUTIONS = new ConcurrentHashMap<>();
+
+  private PeerAddresses() {} // prevent instantiation
+
+  /**
+   * @param address the string containing the hostname and port separated by a ':'
+   * @return an unresolved address composed of the hostname and the port
+   */
+  public static InetSocketAddress parse(String address) {
+    String trimmed = address.trim();
+    int index = trimmed.lastIndexOf(':');
+    if (index <= 0) {
+      throw new IllegalArgumentException("invalid peer address: " + address);
+    }
+    String host = trimmed.substring(0, index);
+    if (host.startsWith("[") && host.endsWith("]")) {
+      host = host.substring(1, host.length() - 1);
+    }
+    try {
+      return InetSocketAddress.createUnresolved(host,
+          Integer.parseInt(trimmed.substring(index + 1)));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("invalid peer address: " + address, e);
+    }
+  }
+
+  /**
+   * Resolves the host names of the addresses in parallel.
+   *
+   * @param addresses the addresses to resolve
+   * @param timeoutMs the time in milliseconds to wait at most for all the host names
+   * @param ttlMs how long in milliseconds a resolved host name is reused
+   * @return the addresses in the same order, resolved if their host name is resolved in time,
+   *         otherwise unresolved. The host string of a resolved address is still the host name,
+   *         so the peer ids derived from it do not change
+   */
+  public static List<InetSocketAddress> resolveAll(List<InetSocketAddress> addresses,
+      long timeoutMs, long ttlMs) {
+    List<CompletableFuture<InetAddress>> futures = new ArrayList<>();
+    for (InetSocketAddress address : addresses) {
+      futures.add(resolve(address.getHostString(), ttlMs));
+    }
+    Deadline deadline = Deadline.after(timeoutMs);
+    List<InetSocketAddress> resolved = new ArrayList<>();
+    for (int i = 0; i < addresses.size(); i++) {
+      InetSocketAddress address = addresses.get(i);
+      InetAddress inetAddress = getNow(futures.get(i), deadline);
+      resolved.add(inetAddress == null ? InetSocketAddress.createUnresolved(
+          address.getHostString(), address.getPort())
+          : new InetSocketAddress(inetAddress, address.getPort()));
+    }
+    return resolved;
+  }
+
+  /**
+   * @param address an address
+   * @return the address to connect to the peer, which is the ip address if it is resolved,
+   *         otherwise the host name
+   */
+  public static String toConnectString(InetSocketAddress address) {
+    InetAddress inetAddress = address.getAddress();
+    if (inetAddress == null) {
+      return address.getHostString() + ":" + address.getPort();
+    }
+    String host = inetAddress.getHostAddress();
+    return (inetAddress instanceof Inet6Address ? "[" + host + "]" : host)
+        + ":" + address.getPort();
+  }
+
+  private static CompletableFuture<InetAddress> resolve(String host, long ttlMs) {
+    long now = System.currentTimeMillis();
+    Resolution resolution = RESOLUTIONS.compute(host,
+        (h, r) -> r == null || r.isExpired(now, ttlMs) ? new Resolution(h, now) : r);
+    // a failed resolution is not kept, so the host name is resolved again by the next command
+    resolution.mFuture.whenComplete((r, e) -> {
+      if (e != null) {
+        RESOLUTIONS.remove(host, resolution);
+      }
+    });
+    return resolution.mFuture;
+  }
+
+  private static InetAddress getNow(CompletableFuture<InetAddress> future, Deadline deadline) {
+    try {
+      return future.get(deadline.getRemainingMs(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | TimeoutException e) {
+      return null;
+    }
+  }
+
+  private static final class Resolution {
+    private final CompletableFuture<InetAddress> mFuture;
+    private final long mStartMs;
+
+    Resolution(String host, long startMs) {
+      mStartMs = startMs;
+      mFuture = CompletableFuture.supplyAsync(() -> {
+        try {
+          InetAddress inetAddress = InetAddress.getByName(host);
+          // keep the host name, so that it is not looked up again in reverse
+          return InetAddress.getByAddress(host, inetAddress.getAddress());
+        } catch (UnknownHostException e) {
+          throw new CompletionException(e);
+        }
+      }, EXECUTOR);
+    }
+
+    /**
+     * @return whether the resolution is complete and older than the ttl, a resolution in
+     *         progress is always shared
+     */
+    boolean isExpired(long now, long ttlMs) {
+      return mFuture.isDone() && now - mStartMs >= ttlMs;
+    }
+  }
+}
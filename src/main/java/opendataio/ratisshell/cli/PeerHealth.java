@@ -0,0 +1,169 @@
+package opendataio.ratisshell.cli;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import opendataio.ratisshell.RetryUtil;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The health of the peers talked to by this process, used to send the requests to the fastest
+ * healthy peers first. The health of a peer is its moving average latency and its recent
+ * failures. A peer failing several times in a row is skipped for a cool-down period, after which
+ * it is tried again once before being skipped again or considered healthy.
+ *
+ * The health is kept in memory, so it persists across the commands of a daemon or an
+ * interactive shell.
+ */
+@ThreadSafe
+public final class PeerHealth {
+  /** The weight of the latest latency in the moving average latency. */
+  private static final double LATENCY_WEIGHT = 0.3;
+  private static final int FAILURE_THRESHOLD = 3;
+  private static final long COOL_DOWN_MS = 30_000;
+
+  private static final Cache<RaftPeerId, Stats> PEERS = CacheBuilder.newBuilder()
+      .maximumSize(1024)
+      .build();
+
+  private static final RetryUtil.Listener<RaftPeerId> LISTENER =
+      new RetryUtil.Listener<RaftPeerId>() {
+        @Override
+        public void onSuccess(RaftPeerId peerId, long latencyMs) {
+          getStats(peerId).recordSuccess(latencyMs);
+        }
+
+        @Override
+        public void onFailure(RaftPeerId peerId, Throwable t) {
+          getStats(peerId).recordFailure();
+        }
+      };
+
+  private PeerHealth() {} // prevent instantiation
+
+  /**
+   * @return a listener recording the outcome of the attempts against the peers
+   */
+  public static RetryUtil.Listener<RaftPeerId> listener() {
+    return LISTENER;
+  }
+
+  /**
+   * Orders the peers by health: the healthy peers by ascending average latency, then the peers
+   * never talked to, then the peers being skipped.
+   *
+   * @param peerIds the peers
+   * @return the peers in the order to send the requests to
+   */
+  public static List<RaftPeerId> sort(List<RaftPeerId> peerIds) {
+    return sort(peerIds, snapshot(peerIds));
+  }
+
+  private static List<RaftPeerId> sort(List<RaftPeerId> peerIds,
+      Map<RaftPeerId, Snapshot> snapshots) {
+    List<RaftPeerId> sorted = new ArrayList<>(peerIds);
+    // the sort is stable, so the peers of the same rank keep their order
+    sorted.sort(Comparator.comparingInt((RaftPeerId p) -> snapshots.get(p).mRank)
+        .thenComparingDouble(p -> snapshots.get(p).mLatencyMs));
+    return sorted;
+  }
+
+  /**
+   * Selects the peers to send a request to all at once, which are all the peers not being
+   * skipped, or all the peers if every peer is being skipped.
+   *
+   * @param peerIds the peers
+   * @return the peers to send the request to, in the order of {@link #sort(List)}
+   */
+  public static List<RaftPeerId> select(List<RaftPeerId> peerIds) {
+    Map<RaftPeerId, Snapshot> snapshots = snapshot(peerIds);
+    List<RaftPeerId> sorted = sort(peerIds, snapshots);
+    List<RaftPeerId> available = new ArrayList<>();
+    for (RaftPeerId peerId : sorted) {
+      if (snapshots.get(peerId).mRank != Stats.RANK_SKIPPED) {
+        available.add(peerId);
+      }
+    }
+    return available.isEmpty() ? sorted : available;
+  }
+
+  /**
+   * Takes the health of the peers at once, as the health of a peer may change while the peers
+   * are sorted, and the sort requires the order of the peers not to change.
+   */
+  private static Map<RaftPeerId, Snapshot> snapshot(List<RaftPeerId> peerIds) {
+    long now = System.currentTimeMillis();
+    Map<RaftPeerId, Snapshot> snapshots = new HashMap<>();
+    for (RaftPeerId peerId : peerIds) {
+      snapshots.computeIfAbsent(peerId, p -> getStats(p).snapshot(now));
+    }
+    return snapshots;
+  }
+
+  private static Stats getStats(RaftPeerId peerId) {
+    try {
+      return PEERS.get(peerId, Stats::new);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class Stats {
+    private static final int RANK_HEALTHY = 0;
+    private static final int RANK_UNKNOWN = 1;
+    private static final int RANK_SKIPPED = 2;
+
+    /** The moving average latency in milliseconds, or -1 if the peer never answered. */
+    private double mLatencyMs = -1;
+    private int mFailures;
+    private long mSkippedUntilMs;
+
+    synchronized void recordSuccess(long latencyMs) {
+      mLatencyMs = mLatencyMs < 0 ? latencyMs
+          : LATENCY_WEIGHT * latencyMs + (1 - LATENCY_WEIGHT) * mLatencyMs;
+      mFailures = 0;
+      mSkippedUntilMs = 0;
+    }
+
+    synchronized void recordFailure() {
+      mFailures++;
+      if (mFailures >= FAILURE_THRESHOLD) {
+        mSkippedUntilMs = System.currentTimeMillis() + COOL_DOWN_MS;
+      }
+    }
+
+    synchronized boolean isAvailable(long now) {
+      return now >= mSkippedUntilMs;
+    }
+
+    synchronized Snapshot snapshot(long now) {
+      int rank;
+      if (!isAvailable(now)) {
+        rank = RANK_SKIPPED;
+      } else {
+        rank = mLatencyMs < 0 || mFailures > 0 ? RANK_UNKNOWN : RANK_HEALTHY;
+      }
+      return new Snapshot(rank, mLatencyMs);
+    }
+  }
+
+  /**
+   * The health of a peer at a point in time.
+   */
+  private static final class Snapshot {
+    private final int mRank;
+    private final double mLatencyMs;
+
+    Snapshot(int rank, double latencyMs) {
+      mRank = rank;
+      mLatencyMs = latencyMs;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package opendataio.ratisshell.cli;
+
+import opendataio.ratisshell.util.Deadline;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftClientRpc;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A session to talk to ratis servers. All the raft clients of a session share one rpc client,
+ * so the connections to the servers are set up once and reused by all the requests, even after
+ * the raft group to talk to changes. A session may be shared by concurrent commands, every
+ * command talking through raft clients of its own, which retry until the deadline of the command.
+ */
+@ThreadSafe
+public final class RaftSession implements Closeable {
+  private final ClientId mClientId = ClientId.randomId();
+  private SharedClientRpc mClientRpc;
+
+  /**
+   * Creates a raft client to talk to the given group, which retries its requests until the given
+   * deadline. The client only holds the rpc client of the session, so it is cheap to create, and
+   * closing it leaves the connections of the session open. The caller owns the client and closes
+   * it once its requests are done.
+   *
+   * @param raftGroup the raft group
+   * @param deadline the deadline of the requests
+   * @param requestTimeoutMs the timeout in milliseconds of a request to a server, only used when
+   *        the connections of the session are set up by the first call
+   * @return the raft client
+   */
+  public RaftClient newClient(RaftGroup raftGroup, Deadline deadline, long requestTimeoutMs) {
+    return RaftUtils.createClient(raftGroup, LeaderCache.get(raftGroup.getGroupId()), mClientId,
+        getClientRpc(requestTimeoutMs), new DeadlineRetryPolicy(deadline));
+  }
+
+  private synchronized RaftClientRpc getClientRpc(long requestTimeoutMs) {
+    if (mClientRpc == null) {
+      mClientRpc = new SharedClientRpc(RaftUtils.createClientRpc(mClientId, requestTimeoutMs));
+    }
+    return mClientRpc;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (mClientRpc != null) {
+      mClientRpc.mRpc.close();
+      mClientRpc = null;
+    }
+  }
+
+  /**
+   * The rpc client shared by the clients of a session, which is not closed by the clients, but
+   * only when the session is closed.
+   */
+  private static final class SharedClientRpc implements RaftClientRpc {
+    private final RaftClientRpc mRpc;
+
+    SharedClientRpc(RaftClientRpc rpc) {
+      mRpc = rpc;
+    }
+
+    @Override
+    public CompletableFuture<RaftClientReply> sendRequestAsync(RaftClientRequest request) {
+      return mRpc.sendRequestAsync(request);
+    }
+
+    @Override
+    public CompletableFuture<RaftClientReply> sendRequestAsyncUnordered(
+        RaftClientRequest request) {
+      return mRpc.sendRequestAsyncUnordered(request);
+    }
+
+    @Override
+    public RaftClientReply sendRequest(RaftClientRequest request) throws IOException {
+      return mRpc.sendRequest(request);
+    }
+
+    @Override
+    public boolean handleException(RaftPeerId serverId, Throwable t, boolean reconnect) {
+      return mRpc.handleException(serverId, t, reconnect);
+    }
+
+    @Override
+    public boolean shouldReconnect(Throwable t) {
+      return mRpc.shouldReconnect(t);
+    }
+
+    @Override
+    public void addRaftPeers(Collection<RaftPeer> peers) {
+      mRpc.addRaftPeers(peers);
+    }
+
+    @Override
+    public void close() {
+      // closed by the session
+    }
+  }
+}
@@ -1,20 +1,31 @@
 package opendataio.ratisshell.cli;
 
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.client.ClientFactory;
 import org.apache.ratis.client.RaftClient;
 import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.client.RaftClientRpc;
 import org.apache.ratis.conf.Parameters;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
 import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.GroupInfoReply;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.protocol.RaftGroup;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.retry.ExponentialBackoffRetry;
+import org.apache.ratis.retry.RetryPolicy;
 import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -22,7 +33,10 @@ import java.util.concurrent.TimeUnit;
  * Helper class for raft journal operations.
  */
 public class RaftUtils {
+  private static final Logger LOG = LoggerFactory.getLogger(RaftUtils.class);
+
   public static final String RAFT_DIR = "raft";
+  public static final long DEFAULT_REQUEST_TIMEOUT_MS = 15_000;
 
   private RaftUtils() {
     // prevent instantiation
@@ -79,26 +93,74 @@ public class RaftUtils {
    */
   public static RaftClient createClient(
       RaftGroup raftGroup) {
-    RaftProperties properties = new RaftProperties();
-    Parameters parameters = new Parameters();
-    RaftClientConfigKeys.Rpc.setRequestTimeout(properties,
-        TimeDuration.valueOf(15, TimeUnit.SECONDS));
-    ExponentialBackoffRetry retryPolicy = ExponentialBackoffRetry.newBuilder()
-        .setBaseSleepTime(TimeDuration.valueOf(1000, TimeUnit.MILLISECONDS))
-        .setMaxAttempts(10)
-        .setMaxSleepTime(
-            TimeDuration.valueOf(100_000, TimeUnit.MILLISECONDS))
-        .build();
+    return createClient(raftGroup, null);
+  }
+
+  /**
+   * Create a raft client to communicate to ratis server, which sends the requests to the given
+   * leader first.
+   * @param raftGroup the raft group
+   * @param leaderId the leader hint of the group, or null if the leader is unknown
+   * @return return a raft client
+   */
+  public static RaftClient createClient(
+      RaftGroup raftGroup, @Nullable RaftPeerId leaderId) {
+    return createClient(raftGroup, leaderId, ClientId.randomId(), null, null);
+  }
+
+  /**
+   * Create a raft client to communicate to ratis server, which sends the requests to the given
+   * leader first.
+   * @param raftGroup the raft group
+   * @param leaderId the leader hint of the group, or null if the leader is unknown
+   * @param clientId the client id
+   * @param clientRpc the rpc client created by {@link #createClientRpc(ClientId, long)} with the
+   *        same client id to share with other raft clients, or null to create a new one
+   * @param retryPolicy the retry policy of the requests, or null to retry up to 10 times with an
+   *        exponential backoff
+   * @return return a raft client
+   */
+  public static RaftClient createClient(RaftGroup raftGroup, @Nullable RaftPeerId leaderId,
+      ClientId clientId, @Nullable RaftClientRpc clientRpc, @Nullable RetryPolicy retryPolicy) {
+    if (retryPolicy == null) {
+      retryPolicy = ExponentialBackoffRetry.newBuilder()
+          .setBaseSleepTime(TimeDuration.valueOf(1000, TimeUnit.MILLISECONDS))
+          .setMaxAttempts(10)
+          .setMaxSleepTime(
+              TimeDuration.valueOf(100_000, TimeUnit.MILLISECONDS))
+          .build();
+    }
     return RaftClient.newBuilder()
         .setRaftGroup(raftGroup)
-        .setClientId(ClientId.randomId())
-        .setLeaderId(null)
-        .setProperties(properties)
-        .setParameters(parameters)
+        .setClientId(clientId)
+        .setLeaderId(leaderId)
+        .setProperties(createProperties(DEFAULT_REQUEST_TIMEOUT_MS))
+        .setParameters(new Parameters())
+        .setClientRpc(clientRpc)
         .setRetryPolicy(retryPolicy)
         .build();
   }
 
+  /**
+   * Create a rpc client, which can be shared by multiple raft clients.
+   * @param clientId the client id of the raft clients sharing the rpc client
+   * @param requestTimeoutMs the timeout in milliseconds of a request to a server
+   * @return return a rpc client
+   */
+  public static RaftClientRpc createClientRpc(ClientId clientId, long requestTimeoutMs) {
+    RaftProperties properties = createProperties(requestTimeoutMs);
+    return ClientFactory.cast(RaftConfigKeys.Rpc.type(properties, LOG::info)
+        .newFactory(new Parameters()))
+        .newRaftClientRpc(clientId, properties);
+  }
+
+  private static RaftProperties createProperties(long requestTimeoutMs) {
+    RaftProperties properties = new RaftProperties();
+    RaftClientConfigKeys.Rpc.setRequestTimeout(properties,
+        TimeDuration.valueOf(requestTimeoutMs, TimeUnit.MILLISECONDS));
+    return properties;
+  }
+
   /**
    * @param reply from the ratis operation
    * @param msgToUser message to user
@@ -116,19 +178,24 @@ public class RaftUtils {
     }
   }
 
+  /**
+   * @param reply the information of a group
+   * @return the commit index of every peer of the group, as the replying peer knows it
+   */
+  public static Map<RaftPeerId, Long> getCommitIndexes(GroupInfoReply reply) {
+    Map<RaftPeerId, Long> commitIndexes = new HashMap<>();
+    for (CommitInfoProto commitInfo : reply.getCommitInfos()) {
+      commitIndexes.put(RaftPeerId.valueOf(commitInfo.getServer().getId()),
+          commitInfo.getCommitIndex());
+    }
+    return commitIndexes;
+  }
+
   /**
    * @param serverAddress the string containing the hostname and port separated by a ':
    * @return a NetAddress object composed of a hostname and a port
    */
   public static InetSocketAddress stringToAddress(String serverAddress) {
-    String hostName;
-    int port;
-    try {
-      hostName = serverAddress.substring(0, serverAddress.indexOf(":"));
-      port = Integer.parseInt(serverAddress.substring(serverAddress.indexOf(":") + 1));
-    } catch (Exception e) {
-      throw new IllegalArgumentException("illegal argument");
-    }
-    return InetSocketAddress.createUnresolved(hostName, port);
+    return PeerAddresses.parse(serverAddress);
   }
 }
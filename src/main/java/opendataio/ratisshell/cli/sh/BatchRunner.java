@@ -0,0 +1,244 @@
+package opendataio.ratisshell.cli.sh;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import opendataio.ratisshell.cli.AbstractShell;
+import opendataio.ratisshell.cli.Command;
+import opendataio.ratisshell.cli.RaftSession;
+import opendataio.ratisshell.cli.sh.command.AbstractRatisCommand;
+import opendataio.ratisshell.conf.PropertyKey;
+import opendataio.ratisshell.conf.RatisShellConfiguration;
+import org.apache.ratis.protocol.RaftGroupId;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a script of shell commands, one command per line, in one process. Blank lines and lines
+ * starting with '#' are ignored.
+ *
+ * All the commands are parsed and validated before any of them runs, then the group targeted by
+ * every command is discovered, as different -peers, -serviceid and -groupid options may target the
+ * same group. The commands targeting the same group run one after another in the order of the
+ * script, and a failed command skips the following commands of its group. The commands of
+ * different groups are independent, and run at the same time, with at most
+ * {@link PropertyKey#PARALLELISM} groups at a time.
+ *
+ * A command whose group is not known before it runs, such as a command running against all the
+ * groups of its peers or a command whose group is not found, is a barrier: it runs alone once all
+ * the previous commands are done, and the following commands only start once it succeeds. If it
+ * fails, all the following commands are skipped. All the commands share one raft session, so the
+ * connections to the servers, the discovered groups and the leaders are reused by the following
+ * commands.
+ */
+@ThreadSafe
+final class BatchRunner {
+  private final PrintStream mOut;
+  private final RaftSession mSession;
+  private final RatisShellConfiguration mConf;
+
+  /**
+   * @param out the stream to print the outputs to
+   * @param session the session shared by all the commands
+   * @param conf the configuration
+   */
+  BatchRunner(PrintStream out, RaftSession session, RatisShellConfiguration conf) {
+    mOut = out;
+    mSession = session;
+    mConf = conf;
+  }
+
+  /**
+   * @param reader the reader of the script
+   * @return 0 if every command succeeds, -1 otherwise
+   */
+  int run(BufferedReader reader) throws IOException {
+    List<Step> steps = new ArrayList<>();
+    List<String> errors = new ArrayList<>();
+    // the parsing prints nothing, and closing the shell closes its streams
+    PrintStream discarded = new PrintStream(ByteStreams.nullOutputStream());
+    try (RatisShell parser = new RatisShell(discarded, discarded, mSession)) {
+      int lineNumber = 0;
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        lineNumber++;
+        if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+          continue;
+        }
+        try {
+          String[] argv = AbstractShell.tokenize(line).toArray(new String[0]);
+          parser.parse(argv);
+          steps.add(new Step(lineNumber, line.trim(), argv));
+        } catch (IllegalArgumentException e) {
+          errors.add(String.format("line %d: %s", lineNumber, e.getMessage()));
+        }
+      }
+    }
+    if (!errors.isEmpty()) {
+      mOut.println("the script is not run, as some commands are invalid:");
+      errors.forEach(mOut::println);
+      return -1;
+    }
+
+    int parallelism = Math.max(mConf.getInt(PropertyKey.PARALLELISM), 1);
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(Math.min(parallelism, steps.size()), 1),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ratis-shell-batch-%d").build());
+    long startNanos = System.nanoTime();
+    try {
+      List<Future<RaftGroupId>> groupIds = new ArrayList<>();
+      for (Step step : steps) {
+        groupIds.add(executor.submit(() -> resolveGroupId(step)));
+      }
+      for (int i = 0; i < steps.size(); i++) {
+        try {
+          steps.get(i).mGroupId = groupIds.get(i).get();
+        } catch (ExecutionException e) {
+          steps.get(i).mGroupId = null;
+        }
+      }
+
+      Set<RaftGroupId> failedGroups = ConcurrentHashMap.newKeySet();
+      int start = 0;
+      while (start < steps.size()) {
+        if (steps.get(start).mGroupId == null) {
+          // a barrier may touch any group, so the following commands may depend on it
+          if (runStep(steps.get(start)) != 0) {
+            break;
+          }
+          start++;
+          continue;
+        }
+        int end = start;
+        while (end < steps.size() && steps.get(end).mGroupId != null) {
+          end++;
+        }
+        runGroups(steps.subList(start, end), executor, failedGroups);
+        start = end;
+      }
+    } catch (ExecutionException e) {
+      mOut.println("failed to run the script: " + e.getCause());
+      return -1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      mOut.println("interrupted while running the script");
+      return -1;
+    } finally {
+      executor.shutdownNow();
+    }
+    List<Step> failed = steps.stream().filter(s -> s.mExitCode != null && s.mExitCode != 0)
+        .collect(Collectors.toList());
+    long skipped = steps.stream().filter(s -> s.mExitCode == null).count();
+    synchronized (mOut) {
+      mOut.printf("%d commands, %d succeeded, %d failed, %d skipped in %d ms%n", steps.size(),
+          steps.size() - failed.size() - skipped, failed.size(), skipped,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      failed.forEach(s -> mOut.printf("  line %d: exit code %d%n", s.mLineNumber, s.mExitCode));
+    }
+    return failed.isEmpty() && skipped == 0 ? 0 : -1;
+  }
+
+  /**
+   * Runs consecutive commands of known groups, the commands of every group one after another and
+   * the groups at the same time, and returns once all of them are done.
+   *
+   * @param steps the commands, in the order of the script
+   * @param executor the executor to run the groups
+   * @param failedGroups the groups with a failed command, whose following commands are skipped
+   */
+  private void runGroups(List<Step> steps, ExecutorService executor,
+      Set<RaftGroupId> failedGroups) throws ExecutionException, InterruptedException {
+    Map<RaftGroupId, List<Step>> groups = new LinkedHashMap<>();
+    for (Step step : steps) {
+      groups.computeIfAbsent(step.mGroupId, g -> new ArrayList<>()).add(step);
+    }
+    List<Future<?>> futures = new ArrayList<>();
+    for (Map.Entry<RaftGroupId, List<Step>> group : groups.entrySet()) {
+      futures.add(executor.submit(() -> {
+        for (Step step : group.getValue()) {
+          // the following commands of the group may depend on the failed one
+          if (failedGroups.contains(group.getKey())) {
+            return;
+          }
+          if (runStep(step) != 0) {
+            failedGroups.add(group.getKey());
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+  }
+
+  /**
+   * Discovers the group targeted by a command, through a shell of its own, as the commands of a
+   * shell are not thread safe.
+   *
+   * @return the id of the group, or null if the group is not known before the command runs
+   */
+  private RaftGroupId resolveGroupId(Step step) throws IOException {
+    PrintStream discarded = new PrintStream(ByteStreams.nullOutputStream());
+    try (RatisShell shell = new RatisShell(discarded, discarded, mSession)) {
+      Command command = shell.findCommand(step.mArgv);
+      if (!(command instanceof AbstractRatisCommand)) {
+        return null;
+      }
+      return ((AbstractRatisCommand) command).resolveGroupId(shell.parse(step.mArgv));
+    }
+  }
+
+  private int runStep(Step step) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    long startNanos = System.nanoTime();
+    int ret;
+    try (PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8.name());
+         RatisShell shell = new RatisShell(out, out, mSession)) {
+      ret = shell.run(step.mArgv);
+    } catch (IOException e) {
+      // only closing the shell may fail
+      ret = -1;
+    }
+    step.mExitCode = ret;
+    // print the whole output of a command at once, so the commands do not interleave
+    synchronized (mOut) {
+      mOut.printf("==> line %d: %s (exit code %d, %d ms)%n", step.mLineNumber, step.mLine, ret,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      mOut.print(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+      mOut.println();
+      mOut.flush();
+    }
+    return ret;
+  }
+
+  private static final class Step {
+    private final int mLineNumber;
+    private final String mLine;
+    private final String[] mArgv;
+    /** The group targeted by the command, or null if it is not known before it runs. */
+    private volatile RaftGroupId mGroupId;
+    /** The exit code of the command, or null if it has not run. */
+    private volatile Integer mExitCode;
+
+    Step(int lineNumber, String line, String[] argv) {
+      mLineNumber = lineNumber;
+      mLine = line;
+      mArgv = argv;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package opendataio.ratisshell.cli.sh;
+
+import com.google.common.io.Resources;
+import opendataio.ratisshell.cli.Command;
+import opendataio.ratisshell.cli.sh.command.Context;
+import opendataio.ratisshell.util.CommonUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An index of the {@link Command} implementations, generated at build time so the shell does not
+ * need to scan the classpath or instantiate its commands to list them.
+ *
+ * The index is a resource with one line per concrete command, holding the class name, the
+ * command name and the usage of the command separated by tabs.
+ */
+public final class CommandIndex {
+  public static final String RESOURCE = "META-INF/ratis-shell/commands";
+  private static final String SEPARATOR = "\t";
+
+  private CommandIndex() {} // prevent instantiation
+
+  /**
+   * Loads the indexed commands.
+   *
+   * @param classLoader the class loader to load the index from
+   * @return the entries of the indexed commands
+   */
+  public static List<Entry> load(ClassLoader classLoader) {
+    URL resource = classLoader.getResource(RESOURCE);
+    if (resource == null) {
+      throw new IllegalStateException("Command index " + RESOURCE + " is not found");
+    }
+    try {
+      return Resources.readLines(resource, StandardCharsets.UTF_8).stream()
+          .filter(line -> !line.trim().isEmpty())
+          .map(line -> {
+            String[] fields = line.split(SEPARATOR, 3);
+            if (fields.length != 3) {
+              throw new IllegalStateException("Invalid command index entry: " + line);
+            }
+            return new Entry(fields[0], fields[1], fields[2]);
+          })
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read command index " + resource, e);
+    }
+  }
+
+  /**
+   * Generates the command index for the compiled classes of a build.
+   *
+   * @param args the compiled classes directory
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("Usage: CommandIndex <classes dir>");
+      System.exit(-1);
+    }
+    Path classesDir = Paths.get(args[0]);
+    // the commands are only instantiated to get their names and usages, they are never run
+    Context context = new Context(System.out);
+    List<String> lines = new ArrayList<>();
+    try (Stream<Path> files = Files.walk(classesDir)) {
+      for (Path file : files.sorted().collect(Collectors.toList())) {
+        String name = classesDir.relativize(file).toString();
+        if (!name.endsWith(".class") || name.contains("$")) {
+          continue;
+        }
+        String className = name.substring(0, name.length() - ".class".length())
+            .replace(File.separatorChar, '.');
+        Class<?> cls = Class.forName(className, false, CommandIndex.class.getClassLoader());
+        if (Command.class.isAssignableFrom(cls) && !cls.isInterface()
+            && !Modifier.isAbstract(cls.getModifiers())) {
+          Command cmd = CommonUtils.createNewClassInstance(cls.asSubclass(Command.class),
+              new Class[] {Context.class}, new Object[] {context});
+          lines.add(String.join(SEPARATOR, className, cmd.getCommandName(), cmd.getUsage()));
+        }
+      }
+    }
+    Path index = classesDir.resolve(RESOURCE);
+    Files.createDirectories(index.getParent());
+    Files.write(index, lines, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * An indexed command.
+   */
+  public static final class Entry {
+    private final String mClassName;
+    private final String mName;
+    private final String mUsage;
+
+    private Entry(String className, String name, String usage) {
+      mClassName = className;
+      mName = name;
+      mUsage = usage;
+    }
+
+    /**
+     * @return the class name of the command
+     */
+    public String getClassName() {
+      return mClassName;
+    }
+
+    /**
+     * @return the command name
+     */
+    public String getName() {
+      return mName;
+    }
+
+    /**
+     * @return the usage information of the command
+     */
+    public String getUsage() {
+      return mUsage;
+    }
+  }
+}
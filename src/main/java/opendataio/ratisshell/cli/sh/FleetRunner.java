@@ -0,0 +1,149 @@
+package opendataio.ratisshell.cli.sh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import opendataio.ratisshell.cli.RaftSession;
+import opendataio.ratisshell.cli.sh.command.AbstractRatisCommand;
+import opendataio.ratisshell.conf.PropertyKey;
+import opendataio.ratisshell.conf.RatisShellConfiguration;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Runs a command against every service configured by the
+ * {@link PropertyKey.Template#RATIS_SHELL_PEER_IDS} properties, with at most
+ * {@link PropertyKey#PARALLELISM} services at the same time. The output of every service is
+ * printed as a whole as soon as its command completes, and a summary of the failed services is
+ * printed at the end.
+ */
+@ThreadSafe
+final class FleetRunner {
+  private final PrintStream mOut;
+  private final RaftSession mSession;
+  private final RatisShellConfiguration mConf;
+
+  /**
+   * @param out the stream to print the outputs to
+   * @param session the session shared by the commands of all the services
+   * @param conf the configuration defining the services
+   */
+  FleetRunner(PrintStream out, RaftSession session, RatisShellConfiguration conf) {
+    mOut = out;
+    mSession = session;
+    mConf = conf;
+  }
+
+  /**
+   * @param conf the configuration
+   * @return the ids of the services defined by the configuration, in alphabetical order
+   */
+  static SortedSet<String> getServiceIds(RatisShellConfiguration conf) {
+    SortedSet<String> serviceIds = new TreeSet<>();
+    for (PropertyKey key : conf.keySet()) {
+      Matcher matcher = PropertyKey.Template.RATIS_SHELL_PEER_IDS.match(key.getName());
+      if (matcher.matches()) {
+        serviceIds.add(matcher.group(1));
+      }
+    }
+    return serviceIds;
+  }
+
+  /**
+   * @param argv the command and its arguments, without the service id
+   * @return 0 if the command succeeds for every service, -1 otherwise
+   */
+  int run(String... argv) {
+    for (String arg : argv) {
+      String option = arg.replaceFirst("^--?", "");
+      if (option.equals(AbstractRatisCommand.SERVICE_ID_OPTION_NAME)
+          || option.equals(AbstractRatisCommand.PEER_OPTION_NAME)) {
+        mOut.printf("the command runs against every configured service, -%s is not allowed%n",
+            option);
+        return -1;
+      }
+    }
+    SortedSet<String> serviceIds = getServiceIds(mConf);
+    if (serviceIds.isEmpty()) {
+      mOut.printf("no service is configured by the %s properties%n",
+          PropertyKey.Template.RATIS_SHELL_PEER_IDS.format("<service id>").getName());
+      return -1;
+    }
+    int parallelism = Math.max(mConf.getInt(PropertyKey.PARALLELISM), 1);
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(parallelism, serviceIds.size()),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ratis-shell-fleet-%d").build());
+    long startNanos = System.nanoTime();
+    Map<String, Future<Integer>> results = new TreeMap<>();
+    try {
+      for (String serviceId : serviceIds) {
+        results.put(serviceId, executor.submit(() -> runService(serviceId, argv)));
+      }
+      Map<String, String> failures = new TreeMap<>();
+      for (Map.Entry<String, Future<Integer>> result : results.entrySet()) {
+        String failure;
+        try {
+          int ret = result.getValue().get();
+          failure = ret == 0 ? null : "exit code " + ret;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          failure = "interrupted";
+        } catch (Exception e) {
+          failure = e.getCause() == null ? e.toString() : e.getCause().toString();
+        }
+        if (failure != null) {
+          failures.put(result.getKey(), failure);
+        }
+      }
+      synchronized (mOut) {
+        mOut.printf("%d services, %d succeeded, %d failed in %d ms%n", serviceIds.size(),
+            serviceIds.size() - failures.size(), failures.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        failures.forEach((serviceId, failure) ->
+            mOut.printf("  %s: %s%n", serviceId, failure));
+      }
+      return failures.isEmpty() ? 0 : -1;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private int runService(String serviceId, String[] argv) {
+    List<String> args = new ArrayList<>(Arrays.asList(argv));
+    args.add("-" + AbstractRatisCommand.SERVICE_ID_OPTION_NAME);
+    args.add(serviceId);
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    long startNanos = System.nanoTime();
+    int ret;
+    try (PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8.name());
+         RatisShell shell = new RatisShell(out, out, mSession)) {
+      ret = shell.run(args.toArray(new String[0]));
+    } catch (IOException e) {
+      // only closing the shell may fail
+      ret = -1;
+    }
+    // print the whole output of a service at once, so the services do not interleave
+    synchronized (mOut) {
+      mOut.printf("==> %s (exit code %d, %d ms)%n", serviceId, ret,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      mOut.print(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+      mOut.println();
+      mOut.flush();
+    }
+    return ret;
+  }
+}
@@ -1,65 +1,169 @@
 package opendataio.ratisshell.cli.sh;
 
+import com.google.common.collect.ImmutableSet;
 import opendataio.ratisshell.cli.AbstractShell;
 import opendataio.ratisshell.cli.Command;
+import opendataio.ratisshell.cli.CommandDescriptor;
+import opendataio.ratisshell.cli.RaftSession;
 import opendataio.ratisshell.cli.sh.command.Context;
+import opendataio.ratisshell.conf.InstancedConfiguration;
 import opendataio.ratisshell.util.CommonUtils;
-import org.reflections.Reflections;
 
-import java.lang.reflect.Modifier;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Shell for manage ratis group.
+ * Shell for manage ratis group. Without arguments, or with -interactive, the shell reads the
+ * commands from the standard input until it is closed. With -fleet, the shell runs the command
+ * against every configured service. With -f, the shell runs the script of commands of the given
+ * file, or of the standard input if the file is '-' or not given.
  */
 public class RatisShell extends AbstractShell {
+  private static final Set<String> INTERACTIVE_OPTIONS =
+      ImmutableSet.of("-interactive", "--interactive");
+  private static final Set<String> FLEET_OPTIONS = ImmutableSet.of("-fleet", "--fleet");
+  private static final Set<String> BATCH_OPTIONS = ImmutableSet.of("-f", "--file");
+
+  /** The session shared with other shells, or null if the shell owns its session. */
+  @Nullable
+  private final RaftSession mSharedSession;
+
+  /**
+   * Creates a shell printing to the standard streams.
+   */
+  public RatisShell() {
+    this(System.out, System.err, null);
+  }
+
+  /**
+   * Creates a shell printing to the given streams.
+   *
+   * @param out the stream to print the usages and the command outputs to
+   * @param err the stream to print the errors of the shell to
+   * @param session the session shared with other shells, or null to create a new one
+   */
+  public RatisShell(PrintStream out, PrintStream err, @Nullable RaftSession session) {
+    super(out, err);
+    mSharedSession = session;
+  }
 
   /**
    * Manage ratis shell command.
    *
    * @param args array of arguments given by the user's input from the terminal
    */
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     RatisShell extensionShell = new RatisShell();
+    if (args.length == 0 || (args.length == 1 && INTERACTIVE_OPTIONS.contains(args[0]))) {
+      // only prompt when the commands are typed by a user
+      System.exit(extensionShell.runInteractive(new BufferedReader(
+          new InputStreamReader(System.in, Charset.defaultCharset())), System.console() != null));
+    }
+    if (args.length <= 2 && BATCH_OPTIONS.contains(args[0])) {
+      boolean stdin = args.length == 1 || args[1].equals("-");
+      try (BufferedReader reader = new BufferedReader(stdin
+          ? new InputStreamReader(System.in, Charset.defaultCharset())
+          : new InputStreamReader(new FileInputStream(args[1]), Charset.defaultCharset()));
+           RaftSession session = new RaftSession()) {
+        System.exit(new BatchRunner(System.out, session, InstancedConfiguration.defaults())
+            .run(reader));
+      } catch (FileNotFoundException e) {
+        System.out.println("cannot open the script: " + e.getMessage());
+        System.exit(-1);
+      }
+    }
     System.exit(extensionShell.run(args));
   }
 
+  @Override
+  public int run(String... argv) {
+    if (argv.length == 0 || !FLEET_OPTIONS.contains(argv[0])) {
+      return super.run(argv);
+    }
+    String[] commandArgv = Arrays.copyOfRange(argv, 1, argv.length);
+    if (commandArgv.length == 0) {
+      printUsage();
+      return -1;
+    }
+    if (mSharedSession != null) {
+      return new FleetRunner(mOut, mSharedSession, InstancedConfiguration.defaults())
+          .run(commandArgv);
+    }
+    try (RaftSession session = new RaftSession()) {
+      return new FleetRunner(mOut, session, InstancedConfiguration.defaults()).run(commandArgv);
+    } catch (IOException e) {
+      mOut.println(e.getMessage());
+      return -1;
+    }
+  }
+
+  @Override
+  protected void printUsage() {
+    super.printUsage();
+    mOut.println("Run without a command, or with -interactive, to read the commands from the "
+        + "standard input.");
+    mOut.println("Prefix a command with -fleet to run it against every configured service.");
+    mOut.println("Run with -f FILE to run the commands of a script, one command per line.");
+  }
+
   @Override
   protected String getShellName() {
     return "sh";
   }
 
   @Override
-  protected Map<String, Command> loadCommands() {
-    Context adminContext = new Context(System.out);
+  protected Map<String, CommandDescriptor> loadCommands() {
+    Context adminContext = mSharedSession == null
+        ? new Context(mOut) : new Context(mOut, mSharedSession);
     return loadCommands(RatisShell.class.getPackage().getName(),
         new Class[] {Context.class},
         new Object[] {mCloser.register(adminContext)});
   }
 
   /**
-   * Get instances of all subclasses of {@link Command} in a sub-package called "command" the given
-   * package.
+   * Get descriptors of all subclasses of {@link Command} in a sub-package called "command" the
+   * given package, as listed by the {@link CommandIndex} generated at build time. A command class
+   * is only loaded and instantiated when its descriptor creates it.
    *
    * @param pkgName package prefix to look in
    * @param classArgs type of args to instantiate the class
    * @param objectArgs args to instantiate the class
-   * @return a mapping from command name to command instance
+   * @return a mapping from command name to command descriptor
    */
-  public static Map<String, Command> loadCommands(String pkgName, Class[] classArgs,
+  public static Map<String, CommandDescriptor> loadCommands(String pkgName, Class[] classArgs,
       Object[] objectArgs) {
-    Map<String, Command> commandsMap = new HashMap<>();
-    Reflections reflections = new Reflections(RatisShell.class.getPackage().getName());
-    for (Class<? extends Command> cls : reflections.getSubTypesOf(Command.class)) {
+    Map<String, CommandDescriptor> commandsMap = new HashMap<>();
+    ClassLoader classLoader = RatisShell.class.getClassLoader();
+    for (CommandIndex.Entry entry : CommandIndex.load(classLoader)) {
+      String className = entry.getClassName();
       // Add commands from <pkgName>.command.*
-      if (cls.getPackage().getName().equals(pkgName + ".command")
-          && !Modifier.isAbstract(cls.getModifiers())) {
-        // Only instantiate a concrete class
-        Command cmd = CommonUtils.createNewClassInstance(cls, classArgs, objectArgs);
-        commandsMap.put(cmd.getCommandName(), cmd);
+      if (!className.substring(0, className.lastIndexOf('.')).equals(pkgName + ".command")) {
+        continue;
       }
+      commandsMap.put(entry.getName(), new CommandDescriptor(entry.getName(), entry.getUsage(),
+          () -> createCommand(classLoader, className, classArgs, objectArgs)));
     }
     return commandsMap;
   }
+
+  private static Command createCommand(ClassLoader classLoader, String className,
+      Class[] classArgs, Object[] objectArgs) {
+    Class<? extends Command> cls;
+    try {
+      cls = Class.forName(className, true, classLoader).asSubclass(Command.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Indexed command " + className + " is not found", e);
+    }
+    return CommonUtils.createNewClassInstance(cls, classArgs, objectArgs);
+  }
 }
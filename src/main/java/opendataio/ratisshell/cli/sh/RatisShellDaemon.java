@@ -0,0 +1,213 @@
+package opendataio.ratisshell.cli.sh;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import opendataio.ratisshell.cli.RaftSession;
+import opendataio.ratisshell.conf.InstancedConfiguration;
+import opendataio.ratisshell.conf.PropertyKey;
+import opendataio.ratisshell.conf.RatisShellConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A resident ratis-shell process, which keeps the JVM, the loaded commands, the rpc connections
+ * and the discovered leaders warm across commands. The bin/ratis script forwards the commands to
+ * the daemon when it is running, and falls back to a new JVM otherwise.
+ *
+ * The daemon listens on the loopback interface and publishes its port and a random token in a
+ * file only readable by its owner, so only the same user can run commands through it. The client
+ * sends the token, the number of arguments and then every argument on its own line. The daemon
+ * replies with the output of the command, followed by a line holding only the exit code.
+ */
+@ThreadSafe
+public final class RatisShellDaemon implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(RatisShellDaemon.class);
+  private static final int REQUEST_TIMEOUT_MS = 10_000;
+
+  private final RaftSession mSession = new RaftSession();
+  private final ServerSocket mServerSocket;
+  private final ExecutorService mExecutor;
+  private final File mDaemonFile;
+  private final String mToken;
+
+  /**
+   * Creates a daemon listening on the loopback interface.
+   *
+   * @param conf the configuration
+   */
+  public RatisShellDaemon(RatisShellConfiguration conf) throws IOException {
+    mDaemonFile = new File(conf.get(PropertyKey.DAEMON_FILE));
+    mServerSocket = new ServerSocket(conf.getInt(PropertyKey.DAEMON_PORT), 50,
+        InetAddress.getLoopbackAddress());
+    mExecutor = Executors.newFixedThreadPool(conf.getInt(PropertyKey.DAEMON_HANDLER_THREADS),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ratis-shell-daemon-%d")
+            .build());
+    byte[] token = new byte[16];
+    new SecureRandom().nextBytes(token);
+    StringBuilder sb = new StringBuilder();
+    for (byte b : token) {
+      sb.append(String.format("%02x", b));
+    }
+    mToken = sb.toString();
+  }
+
+  /**
+   * Publishes the address of the daemon and serves the commands until the daemon is closed.
+   */
+  public void serve() throws IOException {
+    publish();
+    LOG.info("Ratis shell daemon is listening on port {}", mServerSocket.getLocalPort());
+    while (!mServerSocket.isClosed()) {
+      Socket socket;
+      try {
+        socket = mServerSocket.accept();
+      } catch (SocketException e) {
+        if (mServerSocket.isClosed()) {
+          break;
+        }
+        throw e;
+      }
+      mExecutor.submit(() -> handle(socket));
+    }
+  }
+
+  private void publish() throws IOException {
+    File dir = mDaemonFile.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Failed to create directory " + dir);
+    }
+    File tmp = File.createTempFile(mDaemonFile.getName(), ".tmp", dir);
+    try {
+      Files.setPosixFilePermissions(tmp.toPath(), PosixFilePermissions.fromString("rw-------"));
+    } catch (UnsupportedOperationException e) {
+      if (!(tmp.setReadable(false, false) && tmp.setReadable(true, true))) {
+        LOG.warn("Failed to restrict the permissions of {}", tmp);
+      }
+    }
+    String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    Files.write(tmp.toPath(), String.format("%d %s %s%n", mServerSocket.getLocalPort(), mToken,
+        pid).getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp.toPath(), mDaemonFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void handle(Socket socket) {
+    try (Socket s = socket) {
+      s.setSoTimeout(REQUEST_TIMEOUT_MS);
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+      String token = in.readLine();
+      if (token == null || !MessageDigest.isEqual(
+          token.getBytes(StandardCharsets.UTF_8), mToken.getBytes(StandardCharsets.UTF_8))) {
+        LOG.warn("Rejected a request with an invalid token from {}", s.getRemoteSocketAddress());
+        return;
+      }
+      String[] args = new String[Integer.parseInt(in.readLine())];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = Preconditions.checkNotNull(in.readLine(), "missing argument %s", i);
+      }
+      ResponseOutputStream out = new ResponseOutputStream(s.getOutputStream());
+      int ret;
+      try (PrintStream printStream = new PrintStream(out, true, "UTF-8");
+           RatisShell shell = new RatisShell(printStream, printStream, mSession)) {
+        ret = shell.run(args);
+      }
+      out.finish(ret);
+    } catch (Exception e) {
+      LOG.warn("Failed to serve a request", e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      mServerSocket.close();
+      mExecutor.shutdownNow();
+      mSession.close();
+    } finally {
+      // only remove the published address if it is still ours
+      if (mDaemonFile.exists() && new String(Files.readAllBytes(mDaemonFile.toPath()),
+          StandardCharsets.UTF_8).contains(mToken) && !mDaemonFile.delete()) {
+        LOG.warn("Failed to delete {}", mDaemonFile);
+      }
+    }
+  }
+
+  /**
+   * The response stream of a request. The shell closes its print stream when it is closed, so
+   * closing this stream only flushes it, and the exit code is written by {@link #finish(int)}.
+   */
+  private static final class ResponseOutputStream extends FilterOutputStream {
+    private int mLastByte = '\n';
+
+    ResponseOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      mLastByte = b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      if (len > 0) {
+        mLastByte = b[off + len - 1];
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+
+    void finish(int exitCode) throws IOException {
+      // the exit code must be on a line of its own
+      String trailer = (mLastByte == '\n' ? "" : "\n") + exitCode + "\n";
+      out.write(trailer.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+  }
+
+  /**
+   * Starts the ratis shell daemon.
+   *
+   * @param args no arguments are expected
+   */
+  public static void main(String[] args) throws IOException {
+    RatisShellDaemon daemon = new RatisShellDaemon(InstancedConfiguration.defaults());
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        daemon.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to stop the ratis shell daemon", e);
+      }
+    }));
+    daemon.serve();
+  }
+}
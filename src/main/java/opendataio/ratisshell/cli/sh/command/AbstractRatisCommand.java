@@ -2,51 +2,103 @@ package opendataio.ratisshell.cli.sh.command;
 
 import opendataio.ratisshell.RetryUtil;
 import opendataio.ratisshell.cli.Command;
+import opendataio.ratisshell.cli.DiscoveryCache;
+import opendataio.ratisshell.cli.LeaderCache;
+import opendataio.ratisshell.cli.LeaderTransfers;
+import opendataio.ratisshell.cli.PeerAddresses;
+import opendataio.ratisshell.cli.PeerHealth;
+import opendataio.ratisshell.cli.RaftSession;
 import opendataio.ratisshell.cli.RaftUtils;
 import opendataio.ratisshell.conf.InstancedConfiguration;
 import opendataio.ratisshell.conf.PropertyKey;
 import opendataio.ratisshell.conf.RatisShellConfiguration;
+import opendataio.ratisshell.util.Deadline;
+import opendataio.ratisshell.util.PhaseTimer;
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.ratis.client.RaftClient;
 import org.apache.ratis.proto.RaftProtos.RaftPeerProto;
 import org.apache.ratis.proto.RaftProtos.RoleInfoProto;
 import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
 import org.apache.ratis.proto.RaftProtos.FollowerInfoProto;
+import org.apache.ratis.protocol.GroupInfoReply;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.protocol.RaftGroup;
 import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * The base class for all the ratis shell {@link Command} classes.
  */
 public abstract class AbstractRatisCommand implements Command {
+  private static final Logger LOG = LoggerFactory.getLogger(AbstractRatisCommand.class);
+  /** The followers learn the commit index of the leader with the next append entries. */
+  private static final int CATCH_UP_POLLS = 10;
+  private static final long CATCH_UP_POLL_MS = 100;
+
   public static final String SERVICE_ID_OPTION_NAME = "serviceid";
   public static final String PEER_OPTION_NAME = "peers";
   public static final String GROUPID_OPTION_NAME = "groupid";
+  public static final String DEADLINE_OPTION_NAME = "deadline";
   public static final RaftGroupId DEFAULT_RAFT_GROUP_ID
       = RaftGroupId.valueOf(
       UUID.fromString("1-1-1-1-1"));
   protected final PrintStream mPrintStream;
   protected RaftGroup mRaftGroup;
+  private final RaftSession mSession;
+  /** The clients of the current run, keyed by their group and peers. */
+  private final Map<String, RaftClient> mClients = new ConcurrentHashMap<>();
+  private DiscoveryCache mDiscoveryCache;
+  private String mDiscoveryCacheKey;
+  private Deadline mDeadline;
+  private long mAttemptTimeoutMs;
 
   protected AbstractRatisCommand(Context context) {
     mPrintStream = context.getPrintStream();
+    mSession = context.getSession();
   }
 
   @Override
   public int run(CommandLine cl) throws IOException {
+    try (PhaseTimer.Phase phase = PhaseTimer.phase("discovery")) {
+      return discover(cl);
+    }
+  }
+
+  private int discover(CommandLine cl) {
+    // a command instance may be run again, its previous requests are given up by now
+    closeClients();
     RatisShellConfiguration conf = InstancedConfiguration.defaults();
+    mDeadline = Deadline.after(cl.hasOption(DEADLINE_OPTION_NAME)
+        ? parseDuration(DEADLINE_OPTION_NAME, cl.getOptionValue(DEADLINE_OPTION_NAME))
+        : conf.getLong(PropertyKey.DEADLINE_MS));
+    mAttemptTimeoutMs = conf.getLong(PropertyKey.ATTEMPT_TIMEOUT_MS);
     List<InetSocketAddress> addresses = new ArrayList<>();
     String peersStr = "";
     if (cl.hasOption(PEER_OPTION_NAME)) {
@@ -58,14 +110,6 @@ public abstract class AbstractRatisCommand implements Command {
                 cl.getOptionValue(SERVICE_ID_OPTION_NAME)));
       }
     }
-    String[] peersArray = peersStr.split(",");
-    for (int i = 0; i < peersArray.length; i++) {
-      String[] hostPortPair = peersArray[i].split(":");
-      InetSocketAddress addr =
-          new InetSocketAddress(hostPortPair[0], Integer.parseInt(hostPortPair[1]));
-      addresses.add(addr);
-    }
-
     RaftGroupId raftGroupIdFromConfig = DEFAULT_RAFT_GROUP_ID;
     if (cl.hasOption(GROUPID_OPTION_NAME)) {
       raftGroupIdFromConfig = RaftGroupId.valueOf(
@@ -77,33 +121,67 @@ public abstract class AbstractRatisCommand implements Command {
                 cl.getOptionValue(SERVICE_ID_OPTION_NAME));
         try {
           raftGroupIdFromConfig =
-              RaftGroupId.valueOf(UUID.fromString(conf.get(groupIdKey)));
+              RaftGroupId.valueOf(UUID.fromString(conf.getOrDefault(groupIdKey, "")));
         } catch (IllegalArgumentException e) {
           // do nothing
         }
       }
     }
 
+    String[] peersArray = peersStr.split(",");
+    mDiscoveryCache = DiscoveryCache.create(conf);
+    mDiscoveryCacheKey = Arrays.stream(peersArray).map(String::trim).sorted()
+        .collect(Collectors.joining(",", "", "/" + raftGroupIdFromConfig.getUuid()));
+    DiscoveryCache.Entry cached =
+        isAllGroups(cl) ? null : mDiscoveryCache.get(mDiscoveryCacheKey);
+    if (cached != null) {
+      if (LeaderCache.get(cached.getGroupId()) == null) {
+        LeaderCache.update(cached.getGroupId(), cached.getLeaderId());
+      }
+      // the peers of a cached group may be stale, so they are not used to change the group
+      if (cached.getGroup() != null && !changesConfiguration()) {
+        mRaftGroup = cached.getGroup();
+        return 0;
+      }
+    }
+
+    for (String peer : peersArray) {
+      addresses.add(PeerAddresses.parse(peer));
+    }
+    // resolve all the host names at once, and leave the slow ones to the rpc client
+    addresses = PeerAddresses.resolveAll(addresses,
+        mDeadline.cap(conf.getLong(PropertyKey.DNS_TIMEOUT_MS)),
+        conf.getLong(PropertyKey.DNS_CACHE_TTL_MS));
+
     List<RaftPeer> peers = addresses.stream()
         .map(addr -> RaftPeer.newBuilder()
             .setId(RaftUtils.getPeerId(addr))
-            .setAddress(addr)
+            .setAddress(PeerAddresses.toConnectString(addr))
             .build()
         ).collect(Collectors.toList());
     mRaftGroup = RaftGroup.valueOf(raftGroupIdFromConfig, peers);
-    try (final RaftClient client = RaftUtils.createClient(mRaftGroup)) {
-      RaftGroupId remoteGroupId;
+    if (isAllGroups(cl)) {
+      // the groups are listed by the command itself
+      return 0;
+    }
+    final RaftClient client = getClient();
+    // skip the peers known to be failing, unless all of them are
+    List<RaftPeerId> peerIds = PeerHealth.select(
+        peers.stream().map(RaftPeer::getId).collect(Collectors.toList()));
+    RaftGroupId remoteGroupId;
+    if (cached != null) {
+      remoteGroupId = cached.getGroupId();
+    } else {
       List<RaftGroupId> groupIds;
-      groupIds = RetryUtil.run(peers,
-          p -> {
-            try {
-              return client.getGroupManagementApi((p.getId())).list().getGroupIds();
-            } catch (IOException e) {
-              e.printStackTrace();
-              return null;
-            }
-          }
-      );
+      try {
+        // ask all peers at once, so that an unreachable peer does not delay the discovery
+        groupIds = RetryUtil.join(RetryUtil.anyOf("list groups", peerIds,
+            p -> client.getGroupManagementApi(p).list().getGroupIds(),
+            mDeadline, mAttemptTimeoutMs, PeerHealth.listener()));
+      } catch (IOException e) {
+        mPrintStream.println("failed to list groups from any of the peers, " + e.getMessage());
+        return -1;
+      }
 
       if (groupIds.size() == 1) {
         remoteGroupId = groupIds.get(0);
@@ -121,22 +199,70 @@ public abstract class AbstractRatisCommand implements Command {
           remoteGroupId = raftGroupId.get();
         }
       }
-      // TODO(maobaolong): failover to other peer if communicate failure
-      mRaftGroup = RetryUtil.run(peers,
-          p -> {
-            try {
-              return client.getGroupManagementApi((p.getId()))
-                  .info(remoteGroupId).getGroup();
-            } catch (IOException e) {
-              e.printStackTrace();
-              return null;
-            }
-          }
-      );
     }
+    GroupInfoReply groupInfo;
+    try {
+      if (changesConfiguration()) {
+        groupInfo = getGroupInfoFromLeader(RaftGroup.valueOf(remoteGroupId, peers));
+      } else {
+        groupInfo = RetryUtil.join(RetryUtil.anyOf("get group info", peerIds,
+            p -> client.getGroupManagementApi(p).info(remoteGroupId),
+            mDeadline, mAttemptTimeoutMs, PeerHealth.listener()));
+      }
+    } catch (IOException e) {
+      mPrintStream.println("failed to get info of group " + remoteGroupId
+          + " from any of the peers, " + e.getMessage());
+      return -1;
+    }
+    mRaftGroup = groupInfo.getGroup();
+    RaftPeerId leaderId = getLeaderId(groupInfo.getRoleInfoProto());
+    LeaderCache.update(mRaftGroup.getGroupId(), leaderId);
+    mDiscoveryCache.put(mDiscoveryCacheKey, mRaftGroup, leaderId);
     return 0;
   }
 
+  /**
+   * Discovers the group targeted by the command without running the command, so that the
+   * commands targeting the same group can be told apart before they run.
+   *
+   * @param cl the parsed command line
+   * @return the id of the group, or null if the command runs against all the groups of its peers
+   *         or the group is not found
+   */
+  @Nullable
+  public RaftGroupId resolveGroupId(CommandLine cl) {
+    if (isAllGroups(cl)) {
+      return null;
+    }
+    try {
+      return discover(cl) == 0 ? mRaftGroup.getGroupId() : null;
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Whether the command runs against all the groups of the given peers. If so, the discovery
+   * stops once the peers are known, leaving {@link #mRaftGroup} with the given peers only.
+   *
+   * @param cl the parsed command line
+   * @return whether the command runs against all the groups
+   */
+  protected boolean isAllGroups(CommandLine cl) {
+    return false;
+  }
+
+  /**
+   * Whether the command changes the configuration of the group. If so, the discovery always gets
+   * the peers of the group from its leader, as the configuration the new one is built from,
+   * instead of using the peers cached by a previous command, which may be stale.
+   *
+   * @return whether the command changes the configuration of the group
+   */
+  protected boolean changesConfiguration() {
+    return false;
+  }
+
   @Override
   public void validateArgs(CommandLine cl) throws IllegalArgumentException {
     if (!cl.hasOption(SERVICE_ID_OPTION_NAME)
@@ -145,6 +271,15 @@ public abstract class AbstractRatisCommand implements Command {
           "should provide at least one of [%s] and [%s]",
           SERVICE_ID_OPTION_NAME, PEER_OPTION_NAME));
     }
+    if (cl.hasOption(DEADLINE_OPTION_NAME)) {
+      long deadlineMs =
+          parseDuration(DEADLINE_OPTION_NAME, cl.getOptionValue(DEADLINE_OPTION_NAME));
+      if (deadlineMs <= 0) {
+        throw new IllegalArgumentException(String.format(
+            "the %s should be positive: %s", DEADLINE_OPTION_NAME,
+            cl.getOptionValue(DEADLINE_OPTION_NAME)));
+      }
+    }
   }
 
   @Override
@@ -152,7 +287,28 @@ public abstract class AbstractRatisCommand implements Command {
     return new Options()
             .addOption(PEER_OPTION_NAME, true, "Peer addresses seperated by comma")
             .addOption(GROUPID_OPTION_NAME, true, "Raft group id")
-            .addOption(SERVICE_ID_OPTION_NAME, true, "Service id");
+            .addOption(SERVICE_ID_OPTION_NAME, true, "Service id")
+            .addOption(Option.builder(DEADLINE_OPTION_NAME)
+                .longOpt(DEADLINE_OPTION_NAME)
+                .hasArg()
+                .argName("DURATION")
+                .desc("Time budget of the whole command, e.g. 30s or 500ms, "
+                    + "defaults to " + PropertyKey.Name.DEADLINE_MS)
+                .build());
+  }
+
+  /**
+   * @param option the option of the duration, for the error message
+   * @param value a duration such as 30s or 500ms, in milliseconds if it has no unit
+   * @return the duration in milliseconds
+   */
+  protected static long parseDuration(String option, String value) {
+    try {
+      return TimeDuration.valueOf(value, TimeUnit.MILLISECONDS).toLong(TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException(String.format(
+          "invalid %s: %s", option, value), e);
+    }
   }
 
   /**
@@ -175,8 +331,263 @@ public abstract class AbstractRatisCommand implements Command {
     return followerInfo.getLeaderInfo().getId();
   }
 
+  /**
+   * Get the leader id.
+   *
+   * @param roleInfo the role info
+   * @return the leader id, or null if the leader is unknown
+   */
+  protected RaftPeerId getLeaderId(RoleInfoProto roleInfo) {
+    RaftPeerProto leader = getLeader(roleInfo);
+    if (leader == null || leader.getId().isEmpty()) {
+      return null;
+    }
+    return RaftPeerId.valueOf(leader.getId());
+  }
+
+  /**
+   * Gets the raft client to talk to the discovered group. The connections of the client are
+   * shared by all the commands of the shell, but the client belongs to this command, and retries
+   * its requests until the deadline of the command.
+   *
+   * @return the raft client
+   */
+  protected RaftClient getClient() {
+    try (PhaseTimer.Phase phase = PhaseTimer.phase("client")) {
+      return getClient(mRaftGroup);
+    }
+  }
+
+  /**
+   * Gets a raft client of this command to talk to a group, sharing the connections and the
+   * deadline of the command. The client is created on the first call for the group and its
+   * peers, and closed when the command is run again or closed.
+   *
+   * @param raftGroup the group
+   * @return the raft client
+   */
+  protected RaftClient getClient(RaftGroup raftGroup) {
+    String key = raftGroup.getPeers().stream()
+        .map(peer -> peer.getId() + "@" + peer.getAddress())
+        .sorted()
+        .collect(Collectors.joining(",", raftGroup.getGroupId().getUuid() + "/", ""));
+    return mClients.computeIfAbsent(key,
+        k -> mSession.newClient(raftGroup, mDeadline, mAttemptTimeoutMs));
+  }
+
+  private void closeClients() {
+    for (Map.Entry<String, RaftClient> client : mClients.entrySet()) {
+      try {
+        // closing the client leaves the connections of the session open
+        client.getValue().close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close the client of {}: {}", client.getKey(), e.toString());
+      }
+    }
+    mClients.clear();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeClients();
+  }
+
+  /**
+   * @return the deadline of the command, including its discovery
+   */
+  protected Deadline getDeadline() {
+    return mDeadline;
+  }
+
+  /**
+   * @return the time in milliseconds to wait at most for one peer to answer
+   */
+  protected long getAttemptTimeoutMs() {
+    return mAttemptTimeoutMs;
+  }
+
+  /**
+   * Sends a request through the raft client, which retries it until the leader serves it. The
+   * request is cancelled if it is not served by the deadline of the command.
+   *
+   * @param operation the operation name, for the error message
+   * @param request the request
+   * @param <R> the reply type
+   * @return the reply
+   */
+  protected <R> R call(String operation, Callable<R> request) throws IOException {
+    return RetryUtil.join(RetryUtil.call(operation, request, mDeadline));
+  }
+
+  /**
+   * Lists the groups hosted by the peers of the discovered group, asking all the peers at the
+   * same time, as a peer may only host some of the groups.
+   *
+   * @param failures receives the failures of the peers not answering
+   * @return the peers hosting every group, ordered by group id, empty if no peer answers
+   */
+  protected Map<RaftGroupId, List<RaftPeerId>> listAllGroups(List<String> failures)
+      throws IOException {
+    RaftClient client = getClient();
+    List<RaftPeerId> peerIds = mRaftGroup.getPeers().stream()
+        .map(RaftPeer::getId)
+        .collect(Collectors.toList());
+    List<CompletableFuture<List<RaftGroupId>>> lists = RetryUtil.forEach(peerIds,
+        getParallelism(),
+        peerId -> RetryUtil.failover("list groups", Collections.singletonList(peerId),
+            p -> client.getGroupManagementApi(p).list().getGroupIds(),
+            mDeadline, mAttemptTimeoutMs, PeerHealth.listener()));
+    Map<RaftGroupId, List<RaftPeerId>> hosts = new TreeMap<>(
+        Comparator.comparing((RaftGroupId groupId) -> groupId.getUuid()));
+    for (int i = 0; i < peerIds.size(); i++) {
+      try {
+        for (RaftGroupId groupId : RetryUtil.join(lists.get(i))) {
+          hosts.computeIfAbsent(groupId, g -> new ArrayList<>()).add(peerIds.get(i));
+        }
+      } catch (IOException e) {
+        failures.add(e.getMessage());
+      }
+    }
+    return hosts;
+  }
+
+  /**
+   * Gets the information of all the given groups at the same time, with at most
+   * {@link PropertyKey#PARALLELISM} requests in progress. Every group is asked to the peers
+   * hosting it, the healthiest first.
+   *
+   * @param hosts the peers hosting every group
+   * @return the futures of the information of the groups, in the order of the groups
+   */
+  protected List<CompletableFuture<GroupInfoReply>> getGroupInfos(
+      Map<RaftGroupId, List<RaftPeerId>> hosts) throws IOException {
+    RaftClient client = getClient();
+    return RetryUtil.forEach(new ArrayList<>(hosts.keySet()), getParallelism(),
+        groupId -> RetryUtil.failover("get info of group " + groupId.getUuid(),
+            PeerHealth.sort(hosts.get(groupId)),
+            p -> client.getGroupManagementApi(p).info(groupId),
+            mDeadline, mAttemptTimeoutMs, PeerHealth.listener()));
+  }
+
+  /**
+   * Gets the information of a group from its leader, whose configuration is the latest one, so
+   * that a new configuration can be built from it. The last known leader is asked first, then the
+   * other peers by health, and the leader named by a peer which is not the leader is asked again.
+   * The information comes from another peer only when the group has no leader.
+   *
+   * @param group the group, whose peers may be stale
+   * @return the information of the group
+   */
+  protected GroupInfoReply getGroupInfoFromLeader(RaftGroup group) throws IOException {
+    RaftGroupId groupId = group.getGroupId();
+    String operation = "get info of group " + groupId.getUuid();
+    List<RaftPeerId> peerIds = PeerHealth.sort(group.getPeers().stream()
+        .map(RaftPeer::getId)
+        .collect(Collectors.toList()));
+    RaftPeerId leaderHint = LeaderCache.get(groupId);
+    if (leaderHint != null && peerIds.remove(leaderHint)) {
+      peerIds.add(0, leaderHint);
+    }
+    RaftClient client = getClient(group);
+    GroupInfoReply reply = RetryUtil.join(RetryUtil.failover(operation, peerIds,
+        p -> client.getGroupManagementApi(p).info(groupId),
+        mDeadline, mAttemptTimeoutMs, PeerHealth.listener()));
+    RaftPeerId leaderId = getLeaderId(reply.getRoleInfoProto());
+    if (reply.getRoleInfoProto().getRole() != RaftPeerRole.LEADER && leaderId != null) {
+      // the peers of the reply include the leader, even if the given peers do not
+      RaftClient leaderClient = getClient(reply.getGroup());
+      reply = RetryUtil.join(RetryUtil.failover(operation, Collections.singletonList(leaderId),
+          p -> leaderClient.getGroupManagementApi(p).info(groupId),
+          mDeadline, mAttemptTimeoutMs, PeerHealth.listener()));
+      leaderId = getLeaderId(reply.getRoleInfoProto());
+    }
+    LeaderCache.update(groupId, leaderId);
+    return reply;
+  }
+
+  /**
+   * @return the maximum number of groups or servers to talk to at the same time
+   */
+  protected int getParallelism() {
+    return Math.max(InstancedConfiguration.defaults().getInt(PropertyKey.PARALLELISM), 1);
+  }
+
+  /**
+   * @return the helper moving the leaderships and waiting for the configuration changes, within
+   *         the deadline of the command
+   */
+  protected LeaderTransfers getLeaderTransfers() {
+    return new LeaderTransfers(mDeadline, mAttemptTimeoutMs, mPrintStream);
+  }
+
+  /**
+   * Selects the new leader of a group to move the leadership off a peer to, asking the leader
+   * again for a while if no other peer is caught up with it yet.
+   *
+   * @param reply the group info from the leader
+   * @param excludedId the peer to move the leadership off
+   * @return the new leader, or null if no other peer catches up
+   */
+  protected RaftPeer awaitNewLeader(GroupInfoReply reply, RaftPeerId excludedId)
+      throws IOException {
+    Collection<RaftPeerId> excluded = Collections.singleton(excludedId);
+    RaftPeer newLeader = DrainCommand.selectNewLeader(reply, excluded);
+    for (int i = 0; newLeader == null && i < CATCH_UP_POLLS && !getDeadline().isExpired(); i++) {
+      try {
+        Thread.sleep(getDeadline().cap(CATCH_UP_POLL_MS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the peers to catch up");
+      }
+      newLeader = DrainCommand.selectNewLeader(getGroupInfoFromLeader(reply.getGroup()), excluded);
+    }
+    return newLeader;
+  }
+
+  /**
+   * @return the last known leader of the discovered group, or null if it is unknown
+   */
+  protected RaftPeerId getLeaderHint() {
+    return LeaderCache.get(mRaftGroup.getGroupId());
+  }
+
   protected void processReply(RaftClientReply reply, String msg)
       throws IOException {
+    if (reply instanceof GroupInfoReply) {
+      if (reply.isSuccess()) {
+        LeaderCache.update(reply.getRaftGroupId(),
+            getLeaderId(((GroupInfoReply) reply).getRoleInfoProto()));
+      }
+    } else if (reply.isSuccess()) {
+      // the admin requests are served by the leader
+      LeaderCache.update(reply.getRaftGroupId(), reply.getServerId());
+    } else {
+      LeaderCache.update(reply);
+    }
+    if (!reply.isSuccess()) {
+      // the cached group may be stale, discover it again in the next command
+      invalidateCachedGroup(reply.getRaftGroupId());
+    }
     RaftUtils.processReply(reply, msg, mPrintStream);
   }
+
+  /**
+   * Removes the peers of the discovered group from the discovery cache, should be called after
+   * the group configuration is changed.
+   */
+  protected void invalidateCachedGroup() {
+    invalidateCachedGroup(mRaftGroup.getGroupId());
+  }
+
+  /**
+   * Removes the peers of a group from the discovery cache, should be called after the group
+   * configuration is changed.
+   *
+   * @param groupId the group id
+   */
+  protected void invalidateCachedGroup(RaftGroupId groupId) {
+    if (mDiscoveryCache != null) {
+      mDiscoveryCache.invalidate(groupId);
+    }
+  }
 }
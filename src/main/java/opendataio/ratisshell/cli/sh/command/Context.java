@@ -2,6 +2,7 @@ package opendataio.ratisshell.cli.sh.command;
 
 import com.google.common.base.Preconditions;
 import com.google.common.io.Closer;
+import opendataio.ratisshell.cli.RaftSession;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -12,6 +13,7 @@ import java.io.PrintStream;
  */
 public final class Context implements Closeable {
   private final PrintStream mPrintStream;
+  private final RaftSession mSession;
   private final Closer mCloser;
 
   /**
@@ -22,6 +24,21 @@ public final class Context implements Closeable {
     mCloser = Closer.create();
     mCloser.register(
         mPrintStream = Preconditions.checkNotNull(printStream, "printStream"));
+    mSession = mCloser.register(new RaftSession());
+  }
+
+  /**
+   * Build a context sharing a session with other contexts. The session is not closed with the
+   * context.
+   *
+   * @param printStream the print stream
+   * @param session the session to talk to ratis servers
+   */
+  public Context(PrintStream printStream, RaftSession session) {
+    mCloser = Closer.create();
+    mCloser.register(
+        mPrintStream = Preconditions.checkNotNull(printStream, "printStream"));
+    mSession = Preconditions.checkNotNull(session, "session");
   }
 
   /**
@@ -31,6 +48,13 @@ public final class Context implements Closeable {
     return mPrintStream;
   }
 
+  /**
+   * @return the session shared by the commands to talk to ratis servers
+   */
+  public RaftSession getSession() {
+    return mSession;
+  }
+
   @Override
   public void close() throws IOException {
     mCloser.close();
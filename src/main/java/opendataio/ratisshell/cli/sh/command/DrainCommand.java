@@ -0,0 +1,278 @@
+package opendataio.ratisshell.cli.sh.command;
+
+import com.google.common.annotations.VisibleForTesting;
+import opendataio.ratisshell.RetryUtil;
+import opendataio.ratisshell.cli.LeaderCache;
+import opendataio.ratisshell.cli.LeaderTransfers.LeaderTransfer;
+import opendataio.ratisshell.cli.PeerAddresses;
+import opendataio.ratisshell.cli.PeerHealth;
+import opendataio.ratisshell.cli.RaftUtils;
+import opendataio.ratisshell.util.Deadline;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.protocol.GroupInfoReply;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Command for moving all the leaderships off a server, before a maintenance of the server.
+ *
+ * The priority of the server is lowered in every group it hosts, so that it is not elected
+ * again, and the leadership of every group it leads is transferred to the healthiest peer of
+ * the group among the ones caught up with the leader. If the transfer fails, the priorities of
+ * the group are restored. All the groups are drained at the same time.
+ */
+public class DrainCommand extends AbstractRatisCommand {
+  public static final String ADDRESS_OPTION_NAME = "address";
+
+  /**
+   * @param context command context
+   */
+  public DrainCommand(Context context) {
+    super(context);
+  }
+
+  @Override
+  public String getCommandName() {
+    return "drain";
+  }
+
+  @Override
+  public int run(CommandLine cl) throws IOException {
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
+    String address = cl.getOptionValue(ADDRESS_OPTION_NAME);
+    RaftPeerId drainedId = RaftUtils.getPeerId(PeerAddresses.parse(address));
+
+    long startNanos = System.nanoTime();
+    List<String> failures = new ArrayList<>();
+    Map<RaftGroupId, List<RaftPeerId>> hosts = listAllGroups(failures);
+    if (hosts.isEmpty()) {
+      mPrintStream.println("failed to list groups from any of the peers, " + failures);
+      return -1;
+    }
+    List<RaftGroupId> groupIds = new ArrayList<>(hosts.keySet());
+    List<CompletableFuture<GroupInfoReply>> infos = getGroupInfos(hosts);
+    List<GroupInfoReply> drained = new ArrayList<>();
+    for (int i = 0; i < groupIds.size(); i++) {
+      GroupInfoReply reply;
+      try {
+        reply = RetryUtil.join(infos.get(i));
+      } catch (IOException e) {
+        failures.add(e.getMessage());
+        continue;
+      }
+      if (!reply.isSuccess()) {
+        failures.add(String.format("get info of group %s failed: %s",
+            groupIds.get(i).getUuid(), reply.getException()));
+        continue;
+      }
+      if (reply.getGroup().getPeers().stream()
+          .anyMatch(peer -> isDrained(peer, address, drainedId))) {
+        drained.add(reply);
+      }
+    }
+    if (drained.isEmpty()) {
+      mPrintStream.printf("no group is hosted on %s%n", address);
+      failures.forEach(failure -> mPrintStream.println("failed: " + failure));
+      return failures.isEmpty() ? 0 : -1;
+    }
+
+    mPrintStream.printf("draining %d groups hosted on %s%n", drained.size(), address);
+    // leave the time to restore the priorities of a group after the deadline of the command
+    Deadline drainDeadline =
+        Deadline.after(getDeadline().getRemainingMs() + getAttemptTimeoutMs());
+    List<CompletableFuture<String>> results = RetryUtil.forEach(drained, getParallelism(),
+        reply -> RetryUtil.call("drain group " + reply.getRaftGroupId().getUuid(),
+            () -> drain(reply, address, drainedId), drainDeadline));
+    int moved = 0;
+    for (int i = 0; i < drained.size(); i++) {
+      RaftGroupId groupId = drained.get(i).getRaftGroupId();
+      try {
+        String result = RetryUtil.join(results.get(i));
+        mPrintStream.printf("group %s: %s%n", groupId.getUuid(), result);
+        moved++;
+      } catch (IOException e) {
+        failures.add(String.format("group %s: %s", groupId.getUuid(), e.getMessage()));
+      }
+    }
+    mPrintStream.printf("drained %d of %d groups in %d ms%n", moved, drained.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    if (!failures.isEmpty()) {
+      mPrintStream.printf("%d failures:%n", failures.size());
+      failures.forEach(failure -> mPrintStream.println("  " + failure));
+    }
+    return failures.isEmpty() ? 0 : -1;
+  }
+
+  /**
+   * Lowers the priority of the drained peer in a group, and moves the leadership of the group
+   * off the peer if it leads the group.
+   *
+   * @return what is done
+   */
+  private String drain(GroupInfoReply info, String address, RaftPeerId drainedId)
+      throws IOException {
+    // build the new configuration from the latest one, the info may come from a follower
+    GroupInfoReply reply = getGroupInfoFromLeader(info.getGroup());
+    if (!reply.isSuccess()) {
+      throw new IOException("failed to get the group info: " + reply.getException());
+    }
+    try {
+      return drain(reply, reply.getGroup(), address, drainedId);
+    } finally {
+      invalidateCachedGroup(reply.getRaftGroupId());
+    }
+  }
+
+  private String drain(GroupInfoReply reply, RaftGroup group, String address,
+      RaftPeerId drainedId) throws IOException {
+    RaftPeer drainedPeer = group.getPeers().stream()
+        .filter(peer -> isDrained(peer, address, drainedId))
+        .findFirst()
+        .orElseThrow(() -> new IOException("the group is not hosted on " + address));
+    RaftPeerId leaderId = getLeaderId(reply.getRoleInfoProto());
+    boolean isLeader = drainedPeer.getId().equals(leaderId);
+    // without a known leader, the commit indexes of the peers are unknown
+    RaftPeer newLeader = isLeader ? awaitNewLeader(reply, drainedPeer.getId()) : null;
+    if (isLeader && newLeader == null) {
+      throw new IOException("no other peer is caught up with the leader to move the leadership "
+          + "to");
+    }
+
+    Map<String, Integer> addressPriorityMap = new HashMap<>();
+    addressPriorityMap.put(drainedPeer.getAddress(), 0);
+    if (newLeader != null) {
+      int maxPriority = group.getPeers().stream()
+          .filter(peer -> !peer.equals(drainedPeer))
+          .mapToInt(RaftPeer::getPriority)
+          .max()
+          .orElse(0);
+      addressPriorityMap.put(newLeader.getAddress(), maxPriority + 1);
+    }
+    RaftClient client = getClient(group);
+    List<RaftPeer> peers = SetPriorityCommand.setPriorities(group.getPeers(), addressPriorityMap);
+    RaftClientReply setConfigurationReply =
+        call("set configuration", () -> client.admin().setConfiguration(peers));
+    if (!setConfigurationReply.isSuccess()) {
+      throw new IOException("failed to lower the priority: "
+          + setConfigurationReply.getException());
+    }
+    if (!isLeader) {
+      return "lowered the priority, the leader is " + (leaderId == null ? "unknown" : leaderId);
+    }
+    LeaderTransfer transfer;
+    try {
+      transfer = getLeaderTransfers().transferLeadership(client, group, setConfigurationReply,
+          newLeader.getId());
+      if (!transfer.getReply().isSuccess()) {
+        throw new IOException("failed to transfer leadership to " + newLeader.getId() + ": "
+            + transfer.getReply().getException());
+      }
+    } catch (IOException e) {
+      throw new IOException(e.getMessage() + ", "
+          + getLeaderTransfers().restorePriorities(client, group, addressPriorityMap), e);
+    }
+    LeaderCache.update(group.getGroupId(), newLeader.getId());
+    return String.format("moved the leadership to %s, no leader for at most %d ms",
+        newLeader.getId(), transfer.getLeaderlessMs());
+  }
+
+  /**
+   * Selects the healthiest peer of a group among the peers with the highest commit index, other
+   * than the excluded peers. Only the commit indexes known by the leader are used, and the peers
+   * behind the leader are skipped.
+   *
+   * @param reply the group info from the leader
+   * @param excluded the peers not to select
+   * @return the new leader, or null if the reply is not from the leader or no other peer is
+   *         caught up with it
+   */
+  static RaftPeer selectNewLeader(GroupInfoReply reply, Collection<RaftPeerId> excluded) {
+    if (reply.getRoleInfoProto().getRole() != RaftPeerRole.LEADER) {
+      return null;
+    }
+    Map<RaftPeerId, Long> commitIndexes = RaftUtils.getCommitIndexes(reply);
+    Long leaderCommitIndex = commitIndexes.get(reply.getServerId());
+    if (leaderCommitIndex == null) {
+      return null;
+    }
+    Map<RaftPeerId, RaftPeer> candidates = reply.getGroup().getPeers().stream()
+        .filter(peer -> !excluded.contains(peer.getId()))
+        .filter(peer -> commitIndexes.getOrDefault(peer.getId(), -1L) >= leaderCommitIndex)
+        .collect(Collectors.toMap(RaftPeer::getId, peer -> peer));
+    // the sort is stable, so the peers with the same commit index keep the order of health
+    List<RaftPeerId> ranked = PeerHealth.select(new ArrayList<>(candidates.keySet()));
+    ranked.sort(Comparator.comparingLong(
+        (RaftPeerId peerId) -> commitIndexes.get(peerId)).reversed());
+    return ranked.isEmpty() ? null : candidates.get(ranked.get(0));
+  }
+
+  private static boolean isDrained(RaftPeer peer, String address, RaftPeerId drainedId) {
+    return peer.getAddress().equals(address) || peer.getId().equals(drainedId);
+  }
+
+  @Override
+  public void validateArgs(CommandLine cl) throws IllegalArgumentException {
+    super.validateArgs(cl);
+    if (!cl.hasOption(ADDRESS_OPTION_NAME)) {
+      throw new IllegalArgumentException(String.format(
+          "should provide the [%s] of the server to drain", ADDRESS_OPTION_NAME));
+    }
+    PeerAddresses.parse(cl.getOptionValue(ADDRESS_OPTION_NAME));
+  }
+
+  @Override
+  protected boolean isAllGroups(CommandLine cl) {
+    return true;
+  }
+
+  @Override
+  public String getUsage() {
+    return String.format("%s -%s <HOSTNAME:PORT>"
+        + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
+        + " [-%s SERVICE_ID]"
+        + " [-%s DURATION]",
+        getCommandName(), ADDRESS_OPTION_NAME, PEER_OPTION_NAME, SERVICE_ID_OPTION_NAME,
+        DEADLINE_OPTION_NAME);
+  }
+
+  @Override
+  public String getDescription() {
+    return description();
+  }
+
+  @Override
+  public Options getOptions() {
+    return super.getOptions()
+        .addOption(ADDRESS_OPTION_NAME, true,
+            "Address of the server to move all the leaderships off");
+  }
+
+  /**
+   * @return command's description
+   */
+  @VisibleForTesting
+  public static String description() {
+    return "Moves the leaderships of all the groups hosted on the <hostname>:<port> to other "
+        + "peers";
+  }
+}
@@ -1,24 +1,46 @@
 package opendataio.ratisshell.cli.sh.command;
 
 import com.google.common.annotations.VisibleForTesting;
+import opendataio.ratisshell.RetryUtil;
+import opendataio.ratisshell.cli.AvailabilityProbe;
+import opendataio.ratisshell.cli.LeaderCache;
+import opendataio.ratisshell.cli.LeaderTransfers.LeaderTransfer;
+import opendataio.ratisshell.cli.PeerHealth;
 import opendataio.ratisshell.cli.RaftUtils;
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.protocol.GroupInfoReply;
 import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.protocol.RaftPeerId;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * Command for transferring the leadership to another peer.
+ *
+ * With the auto option, every peer is asked for its state at the same time, and the leadership
+ * is transferred to the follower with the fewest log entries to catch up with, then the lowest
+ * latency, so that the new leader serves the requests as soon as possible.
+ *
+ * With the measure option, the group is probed by an {@link AvailabilityProbe} during the
+ * transfer, to report the impact of the transfer on the clients.
  */
 public class ElectCommand extends AbstractRatisCommand {
   public static final String ADDRESS_OPTION_NAME = "address";
+  public static final String AUTO_OPTION_NAME = "auto";
+  public static final String MEASURE_OPTION_NAME = "measure";
 
   /**
    * @param context command context
@@ -34,19 +56,26 @@ public class ElectCommand extends AbstractRatisCommand {
 
   @Override
   public int run(CommandLine cl) throws IOException {
-    super.run(cl);
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
 
-    String strAddr = cl.getOptionValue(ADDRESS_OPTION_NAME);
+    String strAddr;
+    if (cl.hasOption(AUTO_OPTION_NAME)) {
+      RaftPeer candidate = selectCandidate();
+      if (candidate == null) {
+        mPrintStream.println("no follower is available to take over as leader");
+        return -1;
+      }
+      strAddr = candidate.getAddress();
+      mPrintStream.printf("Selected server with address <%s>%n", strAddr);
+    } else {
+      strAddr = cl.getOptionValue(ADDRESS_OPTION_NAME);
+    }
 
     RaftPeerId newLeaderId = null;
-    // update priorities to enable transfer
-    List<RaftPeer> peersWithNewPriorities = new ArrayList<>();
     for (RaftPeer peer : mRaftGroup.getPeers()) {
-      peersWithNewPriorities.add(
-          RaftPeer.newBuilder(peer)
-              .setPriority(peer.getAddress().equals(strAddr) ? 2 : 1)
-              .build()
-      );
       if (peer.getAddress().equals(strAddr)) {
         newLeaderId = peer.getId();
       }
@@ -54,48 +83,140 @@ public class ElectCommand extends AbstractRatisCommand {
     if (newLeaderId == null) {
       return -2;
     }
-    try (RaftClient client = RaftUtils.createClient(mRaftGroup)) {
-      String stringPeers = "[" + peersWithNewPriorities.stream().map(RaftPeer::toString)
-          .collect(Collectors.joining(", ")) + "]";
+    RaftClient client = getClient();
+    // update priorities to enable transfer
+    final RaftPeerId leaderId = newLeaderId;
+    String stringPeers = "[" + mRaftGroup.getPeers().stream()
+        .map(peer -> RaftPeer.newBuilder(peer)
+            .setPriority(peer.getId().equals(leaderId) ? 2 : 1)
+            .build()
+            .toString())
+        .collect(Collectors.joining(", ")) + "]";
+    // the probe is started before the priorities change, which may already disturb the group
+    AvailabilityProbe probe = cl.hasOption(MEASURE_OPTION_NAME)
+        ? new AvailabilityProbe(mRaftGroup, getLeaderHint()) : null;
+    try {
       mPrintStream.printf(
           "Applying new peer state before transferring leadership: %n%s%n", stringPeers);
       RaftClientReply setConfigurationReply =
-          client.admin().setConfiguration(peersWithNewPriorities);
+          getLeaderTransfers().setLeaderPriority(client, mRaftGroup.getPeers(), newLeaderId);
       processReply(setConfigurationReply,
           "failed to set priorities before initiating election");
+      invalidateCachedGroup();
       // transfer leadership
       mPrintStream.printf(
           "Transferring leadership to server with address <%s> %n", strAddr);
+      LeaderTransfer transfer;
       try {
-        Thread.sleep(3_000);
-        RaftClientReply transferLeadershipReply =
-            client.admin().transferLeadership(newLeaderId, 60_000);
-        processReply(transferLeadershipReply, "election failed");
+        transfer = getLeaderTransfers().transferLeadership(client, mRaftGroup,
+            setConfigurationReply, newLeaderId);
+        processReply(transfer.getReply(), "election failed");
+        LeaderCache.update(mRaftGroup.getGroupId(), newLeaderId);
       } catch (Throwable t) {
         mPrintStream.printf("caught an error when executing transfer: %s%n", t.getMessage());
         return -1;
       }
-      mPrintStream.println("Transferring leadership initiated");
+      mPrintStream.printf("Waited %d ms for the new configuration to be committed%n",
+          transfer.getConfigurationWaitMs());
+      mPrintStream.printf("Server with address <%s> is the leader, the group had no leader for at "
+          + "most %d ms%n", strAddr, transfer.getLeaderlessMs());
+      long probeWaitMs = getDeadline().cap(10_000);
+      if (probe != null && !probe.awaitServed(probeWaitMs)) {
+        // the transfer is done, the measurement is only incomplete
+        mPrintStream.printf("Warning: the group served no probe request within %d ms after the "
+            + "transfer%n", probeWaitMs);
+      }
+      return 0;
+    } finally {
+      if (probe != null) {
+        probe.close();
+        mPrintStream.printf("Probed the group with %d requests, %d failed, latency p50 %d ms, "
+            + "p99 %d ms, max %d ms, longest time without serving %d ms%n",
+            probe.getRequests(), probe.getFailures(), probe.getLatencyMs(50),
+            probe.getLatencyMs(99), probe.getLatencyMs(100), probe.getLongestGapMs());
+      }
     }
-    return 0;
+  }
+
+  /**
+   * Asks every peer for its state at the same time, and ranks the followers answering by the
+   * number of committed log entries they lack compared to the most advanced peer, then by the
+   * latency of their answer.
+   *
+   * @return the best follower, or null if no follower answers
+   */
+  private RaftPeer selectCandidate() throws IOException {
+    RaftClient client = getClient();
+    RaftGroupId groupId = mRaftGroup.getGroupId();
+    List<RaftPeer> peers = new ArrayList<>(mRaftGroup.getPeers());
+    List<CompletableFuture<Candidate>> futures = RetryUtil.forEach(peers, getParallelism(),
+        peer -> RetryUtil.failover("get info from " + peer.getId(),
+            Collections.singletonList(peer.getId()),
+            p -> {
+              long startNanos = System.nanoTime();
+              GroupInfoReply reply = client.getGroupManagementApi(p).info(groupId);
+              return new Candidate(peer, reply,
+                  TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            },
+            getDeadline(), getAttemptTimeoutMs(), PeerHealth.listener()));
+    mPrintStream.println("Ranking the peers by lag and latency:");
+    List<Candidate> candidates = new ArrayList<>();
+    long maxCommitIndex = -1;
+    for (int i = 0; i < peers.size(); i++) {
+      Candidate candidate;
+      try {
+        candidate = RetryUtil.join(futures.get(i));
+      } catch (IOException e) {
+        mPrintStream.printf("  %s: unavailable, %s%n", peers.get(i).getId(), e.getMessage());
+        continue;
+      }
+      if (!candidate.mReply.isSuccess()) {
+        mPrintStream.printf("  %s: unavailable, %s%n", candidate.mPeer.getId(),
+            candidate.mReply.getException());
+        continue;
+      }
+      maxCommitIndex = Math.max(maxCommitIndex, candidate.mCommitIndex);
+      candidates.add(candidate);
+    }
+    final long committed = maxCommitIndex;
+    candidates.sort(Comparator.comparingLong((Candidate c) -> committed - c.mCommitIndex)
+        .thenComparingLong(c -> c.mLatencyMs));
+    Candidate best = null;
+    for (Candidate candidate : candidates) {
+      RaftPeerRole role = candidate.mReply.getRoleInfoProto().getRole();
+      mPrintStream.printf("  %s: %s, lag %d entries, latency %d ms%n", candidate.mPeer.getId(),
+          role, committed - candidate.mCommitIndex, candidate.mLatencyMs);
+      if (best == null && role == RaftPeerRole.FOLLOWER) {
+        best = candidate;
+      }
+    }
+    return best == null ? null : best.mPeer;
   }
 
   @Override
   public void validateArgs(CommandLine cl) throws IllegalArgumentException {
     super.validateArgs(cl);
-    if (!cl.hasOption(ADDRESS_OPTION_NAME)) {
-      throw new IllegalArgumentException(String.format("[%s]", ADDRESS_OPTION_NAME));
+    if (cl.hasOption(ADDRESS_OPTION_NAME) == cl.hasOption(AUTO_OPTION_NAME)) {
+      throw new IllegalArgumentException(String.format("should provide either [%s] or [%s]",
+          ADDRESS_OPTION_NAME, AUTO_OPTION_NAME));
     }
   }
 
+  @Override
+  protected boolean changesConfiguration() {
+    return true;
+  }
+
   @Override
   public String getUsage() {
-    return String.format("%s -%s <HOSTNAME:PORT>"
+    return String.format("%s <-%s <HOSTNAME:PORT> | -%s>"
         + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
         + " [-%s RAFT_GROUP_ID]"
-        + " [-%s SERVICE_ID]",
-        getCommandName(), ADDRESS_OPTION_NAME, PEER_OPTION_NAME,
-        GROUPID_OPTION_NAME, SERVICE_ID_OPTION_NAME);
+        + " [-%s SERVICE_ID]"
+        + " [-%s]"
+        + " [-%s DURATION]",
+        getCommandName(), ADDRESS_OPTION_NAME, AUTO_OPTION_NAME, PEER_OPTION_NAME,
+        GROUPID_OPTION_NAME, SERVICE_ID_OPTION_NAME, MEASURE_OPTION_NAME, DEADLINE_OPTION_NAME);
   }
 
   @Override
@@ -107,7 +228,15 @@ public class ElectCommand extends AbstractRatisCommand {
   public Options getOptions() {
     return super.getOptions()
         .addOption(ADDRESS_OPTION_NAME, true,
-            "Server address that will take over as leader");
+            "Server address that will take over as leader")
+        .addOption(Option.builder(AUTO_OPTION_NAME)
+            .longOpt(AUTO_OPTION_NAME)
+            .desc("Transfer the leadership to the most up-to-date and responsive follower")
+            .build())
+        .addOption(Option.builder(MEASURE_OPTION_NAME)
+            .longOpt(MEASURE_OPTION_NAME)
+            .desc("Probe the group during the transfer, and report how long it does not serve")
+            .build());
   }
 
   /**
@@ -115,6 +244,25 @@ public class ElectCommand extends AbstractRatisCommand {
    */
   @VisibleForTesting
   public static String description() {
-    return "Transfers leadership to the <hostname>:<port>";
+    return "Transfers leadership to the <hostname>:<port>, or to the best follower";
+  }
+
+  /**
+   * A peer and its state, as it reports it.
+   */
+  private static final class Candidate {
+    private final RaftPeer mPeer;
+    private final GroupInfoReply mReply;
+    private final long mLatencyMs;
+    /** The commit index of the peer, or -1 if it is unknown. */
+    private final long mCommitIndex;
+
+    Candidate(RaftPeer peer, GroupInfoReply reply, long latencyMs) {
+      mPeer = peer;
+      mReply = reply;
+      mLatencyMs = latencyMs;
+      mCommitIndex = reply.isSuccess()
+          ? RaftUtils.getCommitIndexes(reply).getOrDefault(peer.getId(), -1L) : -1;
+    }
   }
 }
@@ -1,19 +1,32 @@
 package opendataio.ratisshell.cli.sh.command;
 
 import com.google.common.annotations.VisibleForTesting;
-import opendataio.ratisshell.cli.RaftUtils;
+import opendataio.ratisshell.RetryUtil;
+import opendataio.ratisshell.cli.LeaderCache;
+import opendataio.ratisshell.cli.PeerHealth;
+import opendataio.ratisshell.conf.PropertyKey;
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.ratis.client.RaftClient;
 import org.apache.ratis.proto.RaftProtos;
 import org.apache.ratis.protocol.GroupInfoReply;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * Command for querying ratis group information.
  */
 public class InfoCommand extends AbstractRatisCommand {
+  public static final String ALL_GROUPS_OPTION_NAME = "allGroups";
 
   /**
    * @param context command context
@@ -29,34 +42,90 @@ public class InfoCommand extends AbstractRatisCommand {
 
   @Override
   public int run(CommandLine cl) throws IOException {
-    super.run(cl);
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
+    if (isAllGroups(cl)) {
+      return runAllGroups();
+    }
     mPrintStream.println("group id: " + mRaftGroup.getGroupId().getUuid());
-    try (RaftClient client = RaftUtils.createClient(mRaftGroup)) {
-      GroupInfoReply reply =
-          client.getGroupManagementApi(
-              mRaftGroup.getPeers().stream()
-                  .findFirst()
-                  .get()
-                  .getId())
-              .info(mRaftGroup.getGroupId());
-      processReply(reply,
-          "failed to get info");
-      RaftProtos.RaftPeerProto leader =
-          getLeader(reply.getRoleInfoProto());
-      mPrintStream.printf("leader info: %s(%s)%n%n",
-          leader.getId().toStringUtf8(), leader.getAddress());
+    RaftClient client = getClient();
+    // ask the fastest healthy peer first, and the next peer if it does not answer in time
+    List<RaftPeerId> peerIds = PeerHealth.sort(mRaftGroup.getPeers().stream()
+        .map(RaftPeer::getId)
+        .collect(Collectors.toList()));
+    GroupInfoReply reply = RetryUtil.join(RetryUtil.failover("get group info", peerIds,
+        p -> client.getGroupManagementApi(p).info(mRaftGroup.getGroupId()),
+        getDeadline(), getAttemptTimeoutMs(), PeerHealth.listener()));
+    processReply(reply,
+        "failed to get info");
+    RaftProtos.RaftPeerProto leader =
+        getLeader(reply.getRoleInfoProto());
+    mPrintStream.printf("leader info: %s(%s)%n%n",
+        leader.getId().toStringUtf8(), leader.getAddress());
+    mPrintStream.println(reply.getCommitInfos());
+    return 0;
+  }
+
+  /**
+   * Lists the groups of all the given peers, and gets the information of all the groups at the
+   * same time, with at most {@link PropertyKey#PARALLELISM} requests in progress.
+   */
+  private int runAllGroups() throws IOException {
+    List<String> failures = new ArrayList<>();
+    Map<RaftGroupId, List<RaftPeerId>> hosts = listAllGroups(failures);
+    if (hosts.isEmpty()) {
+      mPrintStream.println("failed to list groups from any of the peers, " + failures);
+      return -1;
+    }
+
+    List<RaftGroupId> groupIds = new ArrayList<>(hosts.keySet());
+    List<CompletableFuture<GroupInfoReply>> infos = getGroupInfos(hosts);
+    for (int i = 0; i < groupIds.size(); i++) {
+      RaftGroupId groupId = groupIds.get(i);
+      GroupInfoReply reply;
+      try {
+        reply = RetryUtil.join(infos.get(i));
+      } catch (IOException e) {
+        failures.add(e.getMessage());
+        continue;
+      }
+      if (!reply.isSuccess()) {
+        failures.add(String.format("get info of group %s failed: %s", groupId.getUuid(),
+            reply.getException()));
+        continue;
+      }
+      RaftPeerId leaderId = getLeaderId(reply.getRoleInfoProto());
+      LeaderCache.update(groupId, leaderId);
+      RaftProtos.RaftPeerProto leader = getLeader(reply.getRoleInfoProto());
+      mPrintStream.println("group id: " + groupId.getUuid());
+      mPrintStream.printf("leader info: %s%n", leaderId == null ? "unknown"
+          : String.format("%s(%s)", leaderId, leader.getAddress()));
+      mPrintStream.printf("role of %s: %s%n", reply.getServerId(),
+          reply.getRoleInfoProto().getRole());
       mPrintStream.println(reply.getCommitInfos());
+      mPrintStream.println();
     }
-    return 0;
+    mPrintStream.printf("%d groups, %d failures%n", groupIds.size(), failures.size());
+    failures.forEach(mPrintStream::println);
+    return failures.isEmpty() ? 0 : -1;
+  }
+
+  @Override
+  protected boolean isAllGroups(CommandLine cl) {
+    return cl.hasOption(ALL_GROUPS_OPTION_NAME);
   }
 
   @Override
   public String getUsage() {
     return String.format("%s"
         + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
-        + " [-%s RAFT_GROUP_ID]"
-        + " [-%s SERVICE_ID]",
-        getCommandName(), PEER_OPTION_NAME, GROUPID_OPTION_NAME, SERVICE_ID_OPTION_NAME);
+        + " [-%s RAFT_GROUP_ID | -%s]"
+        + " [-%s SERVICE_ID]"
+        + " [-%s DURATION]",
+        getCommandName(), PEER_OPTION_NAME, GROUPID_OPTION_NAME, ALL_GROUPS_OPTION_NAME,
+        SERVICE_ID_OPTION_NAME, DEADLINE_OPTION_NAME);
   }
 
   @Override
@@ -66,7 +135,11 @@ public class InfoCommand extends AbstractRatisCommand {
 
   @Override
   public Options getOptions() {
-    return super.getOptions();
+    return super.getOptions()
+        .addOption(Option.builder(ALL_GROUPS_OPTION_NAME)
+            .longOpt("all-groups")
+            .desc("Display the information of all the groups of the peers")
+            .build());
   }
 
   /**
@@ -74,6 +147,7 @@ public class InfoCommand extends AbstractRatisCommand {
    */
   @VisibleForTesting
   public static String description() {
-    return "Display the information of a specific raft group";
+    return "Display the information of a specific raft group, or of all the raft groups of "
+        + "the peers";
   }
 }
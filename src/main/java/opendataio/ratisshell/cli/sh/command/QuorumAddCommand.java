@@ -1,8 +1,11 @@
 package opendataio.ratisshell.cli.sh.command;
 
 import com.google.common.annotations.VisibleForTesting;
+import opendataio.ratisshell.RetryUtil;
+import opendataio.ratisshell.cli.PeerAddresses;
 import opendataio.ratisshell.cli.RaftUtils;
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.ratis.client.RaftClient;
 import org.apache.ratis.protocol.RaftClientReply;
@@ -15,13 +18,24 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
- * Command for remove ratis server.
+ * Command for add ratis server.
+ *
+ * With the staged option, the command reports the progress of the new peers catching up with
+ * the group at a fixed interval while they are added, and returns only once they lack at most a
+ * given number of committed entries, so that the following operations do not run while the new
+ * peers slow down the commits.
  */
 public class QuorumAddCommand extends AbstractRatisCommand {
   public static final String ADD_PEER_ADDRESS = "addPeer";
+  public static final String STAGED_OPTION_NAME = "staged";
+  public static final String MAX_LAG_OPTION_NAME = "maxLag";
+  public static final String INTERVAL_OPTION_NAME = "interval";
+  private static final long DEFAULT_MAX_LAG = 100;
+  private static final long DEFAULT_INTERVAL_MS = 1_000;
 
   /**
    * @param context command context
@@ -37,7 +51,10 @@ public class QuorumAddCommand extends AbstractRatisCommand {
 
   @Override
   public int run(CommandLine cl) throws IOException {
-    super.run(cl);
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
 
     String[] addresses = cl.getOptionValues(ADD_PEER_ADDRESS);
     if (addresses.length < 1) {
@@ -45,41 +62,85 @@ public class QuorumAddCommand extends AbstractRatisCommand {
     }
     Map<RaftPeerId, InetSocketAddress> raftPeerInfos = new HashMap<>();
     for (String address : addresses) {
-      String[] str = address.split(":");
-      InetSocketAddress serverAddress = InetSocketAddress
-              .createUnresolved(str[0], Integer.parseInt(str[1]));
+      InetSocketAddress serverAddress = PeerAddresses.parse(address);
       RaftPeerId peerId = RaftUtils.getPeerId(serverAddress);
       raftPeerInfos.put(peerId, serverAddress);
     }
 
-    try (RaftClient client = RaftUtils.createClient(mRaftGroup)) {
-      List<RaftPeer> peers = new ArrayList<>(mRaftGroup.getPeers());
-      List<RaftPeerId> peerIdList = mRaftGroup.getPeers().stream()
-              .map(RaftPeer::getId).collect(Collectors.toList());
-      for (RaftPeerId id : raftPeerInfos.keySet()) {
-        if (!peerIdList.contains(id)) {
-          peers.add(RaftPeer.newBuilder()
-                  .setId(id)
-                  .setAddress(raftPeerInfos.get(id))
-                  .setPriority(0)
-                  .build());
-        }
+    RaftClient client = getClient();
+    List<RaftPeer> peers = new ArrayList<>(mRaftGroup.getPeers());
+    List<RaftPeerId> peerIdList = mRaftGroup.getPeers().stream()
+            .map(RaftPeer::getId).collect(Collectors.toList());
+    for (RaftPeerId id : raftPeerInfos.keySet()) {
+      if (!peerIdList.contains(id)) {
+        peers.add(RaftPeer.newBuilder()
+                .setId(id)
+                .setAddress(raftPeerInfos.get(id))
+                .setPriority(0)
+                .build());
       }
-      RaftClientReply reply = client.admin().setConfiguration(peers);
-      processReply(reply, "failed to remove raft peer");
     }
+    RaftClientReply reply;
+    if (cl.hasOption(STAGED_OPTION_NAME)) {
+      List<RaftPeerId> newPeerIds = raftPeerInfos.keySet().stream()
+          .filter(id -> !peerIdList.contains(id))
+          .collect(Collectors.toList());
+      CompletableFuture<RaftClientReply> change = RetryUtil.call("set configuration",
+          () -> client.admin().setConfiguration(peers), getDeadline());
+      reply = getLeaderTransfers().awaitCatchUp(client, mRaftGroup, newPeerIds, change,
+          cl.hasOption(MAX_LAG_OPTION_NAME)
+              ? Long.parseLong(cl.getOptionValue(MAX_LAG_OPTION_NAME)) : DEFAULT_MAX_LAG,
+          cl.hasOption(INTERVAL_OPTION_NAME)
+              ? parseDuration(INTERVAL_OPTION_NAME, cl.getOptionValue(INTERVAL_OPTION_NAME))
+              : DEFAULT_INTERVAL_MS);
+    } else {
+      reply = call("set configuration", () -> client.admin().setConfiguration(peers));
+    }
+    processReply(reply, "failed to remove raft peer");
+    invalidateCachedGroup();
     return 0;
   }
 
+  @Override
+  public void validateArgs(CommandLine cl) throws IllegalArgumentException {
+    super.validateArgs(cl);
+    if (cl.hasOption(MAX_LAG_OPTION_NAME)) {
+      String value = cl.getOptionValue(MAX_LAG_OPTION_NAME);
+      boolean valid;
+      try {
+        valid = Long.parseLong(value) >= 0;
+      } catch (NumberFormatException e) {
+        valid = false;
+      }
+      if (!valid) {
+        throw new IllegalArgumentException(String.format(
+            "the %s should be a non-negative integer: %s", MAX_LAG_OPTION_NAME, value));
+      }
+    }
+    if (cl.hasOption(INTERVAL_OPTION_NAME)
+        && parseDuration(INTERVAL_OPTION_NAME, cl.getOptionValue(INTERVAL_OPTION_NAME)) <= 0) {
+      throw new IllegalArgumentException(String.format("the %s should be positive: %s",
+          INTERVAL_OPTION_NAME, cl.getOptionValue(INTERVAL_OPTION_NAME)));
+    }
+  }
+
+  @Override
+  protected boolean changesConfiguration() {
+    return true;
+  }
+
   @Override
   public String getUsage() {
     return String.format("%s"
                     + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
                     + " [-%s RAFT_GROUP_ID]"
                     + " [-%s SERVICE_ID]"
-                    + " [-%s PEER_HOST:PEER_PORT]",
+                    + " [-%s PEER_HOST:PEER_PORT]"
+                    + " [-%s [-%s MAX_LAG] [-%s DURATION]]"
+                    + " [-%s DURATION]",
             getCommandName(), PEER_OPTION_NAME, GROUPID_OPTION_NAME,
-            SERVICE_ID_OPTION_NAME, ADD_PEER_ADDRESS);
+            SERVICE_ID_OPTION_NAME, ADD_PEER_ADDRESS, STAGED_OPTION_NAME, MAX_LAG_OPTION_NAME,
+            INTERVAL_OPTION_NAME, DEADLINE_OPTION_NAME);
   }
 
   @Override
@@ -89,11 +150,18 @@ public class QuorumAddCommand extends AbstractRatisCommand {
 
   @Override
   public Options getOptions() {
-    return new Options()
-            .addOption(PEER_OPTION_NAME, true, "Peer addresses seperated by comma")
-            .addOption(GROUPID_OPTION_NAME, true, "Raft group id")
-            .addOption(SERVICE_ID_OPTION_NAME, true, "Service id")
-            .addOption(ADD_PEER_ADDRESS, true, "peer address to be added");
+    return super.getOptions()
+            .addOption(ADD_PEER_ADDRESS, true, "peer address to be added")
+            .addOption(Option.builder(STAGED_OPTION_NAME)
+                .longOpt(STAGED_OPTION_NAME)
+                .desc("Report the catch-up progress of the new peers, and wait until they "
+                    + "are caught up")
+                .build())
+            .addOption(MAX_LAG_OPTION_NAME, true,
+                "Number of committed entries a new peer may lack to be caught up, "
+                    + DEFAULT_MAX_LAG + " by default")
+            .addOption(INTERVAL_OPTION_NAME, true,
+                "Time between two progress reports, 1s by default");
   }
 
   /**
@@ -1,6 +1,7 @@
 package opendataio.ratisshell.cli.sh.command;
 
 import com.google.common.annotations.VisibleForTesting;
+import opendataio.ratisshell.cli.PeerAddresses;
 import opendataio.ratisshell.cli.RaftUtils;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
@@ -34,7 +35,10 @@ public class QuorumRemoveCommand extends AbstractRatisCommand {
 
   @Override
   public int run(CommandLine cl) throws IOException {
-    super.run(cl);
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
 
     String[] addresses = cl.getOptionValues(REMOVE_PEER_ADDRESS);
     if (addresses.length < 1) {
@@ -42,35 +46,40 @@ public class QuorumRemoveCommand extends AbstractRatisCommand {
     }
     List<RaftPeerId> raftPeerIds = new ArrayList<>();
     for (String address : addresses) {
-      String[] str = address.split(":");
-      InetSocketAddress serverAddress = InetSocketAddress
-              .createUnresolved(str[0], Integer.parseInt(str[1]));
+      InetSocketAddress serverAddress = PeerAddresses.parse(address);
       RaftPeerId peerId = RaftUtils.getPeerId(serverAddress);
       raftPeerIds.add(peerId);
     }
 
-    try (RaftClient client = RaftUtils.createClient(mRaftGroup)) {
-      List<RaftPeer> peers = new ArrayList<>();
-      for (RaftPeer peer : mRaftGroup.getPeers()) {
-        if (!raftPeerIds.contains(peer.getId())) {
-          peers.add(RaftPeer.newBuilder(peer).build());
-        }
+    RaftClient client = getClient();
+    List<RaftPeer> peers = new ArrayList<>();
+    for (RaftPeer peer : mRaftGroup.getPeers()) {
+      if (!raftPeerIds.contains(peer.getId())) {
+        peers.add(RaftPeer.newBuilder(peer).build());
       }
-      RaftClientReply reply = client.admin().setConfiguration(peers);
-      processReply(reply, "failed to remove raft peer");
     }
+    RaftClientReply reply =
+        call("set configuration", () -> client.admin().setConfiguration(peers));
+    processReply(reply, "failed to remove raft peer");
+    invalidateCachedGroup();
     return 0;
   }
 
+  @Override
+  protected boolean changesConfiguration() {
+    return true;
+  }
+
   @Override
   public String getUsage() {
     return String.format("%s"
                     + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
                     + " [-%s RAFT_GROUP_ID]"
                     + " [-%s SERVICE_ID]"
-                    + " [-%s PEER_HOST:PEER_PORT]",
+                    + " [-%s PEER_HOST:PEER_PORT]"
+                    + " [-%s DURATION]",
             getCommandName(), PEER_OPTION_NAME, GROUPID_OPTION_NAME,
-            SERVICE_ID_OPTION_NAME, REMOVE_PEER_ADDRESS);
+            SERVICE_ID_OPTION_NAME, REMOVE_PEER_ADDRESS, DEADLINE_OPTION_NAME);
   }
 
   @Override
@@ -80,10 +89,7 @@ public class QuorumRemoveCommand extends AbstractRatisCommand {
 
   @Override
   public Options getOptions() {
-    return new Options()
-            .addOption(PEER_OPTION_NAME, true, "Peer addresses seperated by comma")
-            .addOption(GROUPID_OPTION_NAME, true, "Raft group id")
-            .addOption(SERVICE_ID_OPTION_NAME, true, "Service id")
+    return super.getOptions()
             .addOption(REMOVE_PEER_ADDRESS, true, "peer address to be removed");
   }
 
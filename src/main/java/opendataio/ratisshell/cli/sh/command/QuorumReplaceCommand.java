@@ -0,0 +1,259 @@
+package opendataio.ratisshell.cli.sh.command;
+
+import com.google.common.annotations.VisibleForTesting;
+import opendataio.ratisshell.RetryUtil;
+import opendataio.ratisshell.cli.LeaderCache;
+import opendataio.ratisshell.cli.LeaderTransfers.LeaderTransfer;
+import opendataio.ratisshell.cli.PeerAddresses;
+import opendataio.ratisshell.cli.RaftUtils;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.protocol.GroupInfoReply;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Command for replacing a peer of a group by a new peer.
+ *
+ * The new peer is added with priority 0, like {@link QuorumAddCommand} does, and the command
+ * waits until it catches up with the group, so the group never has fewer caught-up peers than
+ * before. If the old peer is the leader, the leadership is then transferred to the most
+ * up-to-date of the other peers, the new peer included, the way {@link DrainCommand} does, and
+ * the command fails if none of them is caught up with the leader. The old peer is removed last.
+ * A failure after the new peer is added does not remove it again: the command reports the stage
+ * which failed and the state the group is left in.
+ */
+public class QuorumReplaceCommand extends AbstractRatisCommand {
+  public static final String OLD_OPTION_NAME = "old";
+  public static final String NEW_OPTION_NAME = "new";
+  public static final String MAX_LAG_OPTION_NAME = QuorumAddCommand.MAX_LAG_OPTION_NAME;
+  private static final long DEFAULT_MAX_LAG = 100;
+  private static final long INTERVAL_MS = 1_000;
+
+  /**
+   * @param context command context
+   */
+  public QuorumReplaceCommand(Context context) {
+    super(context);
+  }
+
+  @Override
+  public String getCommandName() {
+    return "quorumReplace";
+  }
+
+  @Override
+  public int run(CommandLine cl) throws IOException {
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
+    String oldAddress = cl.getOptionValue(OLD_OPTION_NAME).trim();
+    RaftPeer oldPeer = mRaftGroup.getPeers().stream()
+        .filter(peer -> peer.getAddress().equals(oldAddress)
+            || peer.getId().equals(RaftUtils.getPeerId(PeerAddresses.parse(oldAddress))))
+        .findFirst()
+        .orElse(null);
+    if (oldPeer == null) {
+      mPrintStream.printf("%s is not a peer of the group%n", oldAddress);
+      return -2;
+    }
+    InetSocketAddress newAddress = PeerAddresses.parse(cl.getOptionValue(NEW_OPTION_NAME));
+    RaftPeerId newPeerId = RaftUtils.getPeerId(newAddress);
+    if (mRaftGroup.getPeers().stream().anyMatch(peer -> peer.getId().equals(newPeerId))) {
+      mPrintStream.printf("%s is already a peer of the group%n", newPeerId);
+      return -2;
+    }
+    long maxLag = cl.hasOption(MAX_LAG_OPTION_NAME)
+        ? Long.parseLong(cl.getOptionValue(MAX_LAG_OPTION_NAME)) : DEFAULT_MAX_LAG;
+    RaftClient client = getClient();
+    Map<String, Long> stages = new LinkedHashMap<>();
+    long startNanos = System.nanoTime();
+
+    // add the new peer, and wait until it catches up
+    mPrintStream.printf("Adding %s%n", newPeerId);
+    Map<RaftPeerId, RaftPeer> peers = new LinkedHashMap<>();
+    mRaftGroup.getPeers().forEach(peer -> peers.put(peer.getId(), peer));
+    peers.put(newPeerId, RaftPeer.newBuilder()
+        .setId(newPeerId)
+        .setAddress(newAddress)
+        .setPriority(0)
+        .build());
+    List<RaftPeer> addedPeers = new ArrayList<>(peers.values());
+    CompletableFuture<RaftClientReply> change = RetryUtil.call("set configuration",
+        () -> client.admin().setConfiguration(addedPeers), getDeadline());
+    RaftClientReply reply = getLeaderTransfers().awaitCatchUp(client, mRaftGroup,
+        Collections.singletonList(newPeerId), change, maxLag, INTERVAL_MS);
+    invalidateCachedGroup();
+    processReply(reply, "failed to add " + newPeerId);
+    long stageNanos = System.nanoTime();
+    stages.put("add", TimeUnit.NANOSECONDS.toMillis(stageNanos - startNanos));
+
+    // move the leadership off the old peer, and remove it
+    RaftGroup group = RaftGroup.valueOf(mRaftGroup.getGroupId(), addedPeers);
+    String stage = "leadership";
+    boolean lowered = false;
+    try {
+      if (oldPeer.getId().equals(reply.getServerId())) {
+        GroupInfoReply info = call("get group info",
+            () -> client.getGroupManagementApi(reply.getServerId()).info(group.getGroupId()));
+        processReply(info, "failed to get the group info from the leader");
+        RaftPeer newLeader = awaitNewLeader(info, oldPeer.getId());
+        if (newLeader == null) {
+          throw new IOException("no other peer is caught up with the leader to move the "
+              + "leadership to");
+        }
+        mPrintStream.printf("Transferring leadership from %s to %s%n", oldPeer.getId(),
+            newLeader.getId());
+        Map<String, Integer> addressPriorityMap = new HashMap<>();
+        addressPriorityMap.put(oldPeer.getAddress(), 0);
+        addressPriorityMap.put(newLeader.getAddress(), addedPeers.stream()
+            .filter(peer -> !peer.getId().equals(oldPeer.getId()))
+            .mapToInt(RaftPeer::getPriority)
+            .max()
+            .orElse(0) + 1);
+        List<RaftPeer> prioritizedPeers = SetPriorityCommand.setPriorities(addedPeers,
+            addressPriorityMap);
+        RaftClientReply priorityReply =
+            call("set configuration", () -> client.admin().setConfiguration(prioritizedPeers));
+        processReply(priorityReply, "failed to lower the priority of " + oldPeer.getId());
+        LeaderTransfer transfer;
+        try {
+          transfer = getLeaderTransfers().transferLeadership(client, group, priorityReply,
+              newLeader.getId());
+          processReply(transfer.getReply(), "failed to transfer the leadership");
+        } catch (IOException e) {
+          throw new IOException(e.getMessage() + ", "
+              + getLeaderTransfers().restorePriorities(client, group, addressPriorityMap), e);
+        }
+        lowered = true;
+        prioritizedPeers.forEach(peer -> peers.put(peer.getId(), peer));
+        LeaderCache.update(group.getGroupId(), newLeader.getId());
+        mPrintStream.printf("%s is the leader, the group had no leader for at most %d ms%n",
+            newLeader.getId(), transfer.getLeaderlessMs());
+      } else {
+        mPrintStream.printf("%s is not the leader, no leadership to transfer%n",
+            oldPeer.getId());
+      }
+    } catch (IOException e) {
+      printFailure(stage, newPeerId, oldPeer, lowered, e);
+      throw e;
+    }
+    long leadershipNanos = System.nanoTime();
+    stages.put(stage, TimeUnit.NANOSECONDS.toMillis(leadershipNanos - stageNanos));
+
+    stage = "remove";
+    mPrintStream.printf("Removing %s%n", oldPeer.getId());
+    peers.remove(oldPeer.getId());
+    List<RaftPeer> remainingPeers = new ArrayList<>(peers.values());
+    try {
+      RaftClientReply removeReply =
+          call("set configuration", () -> client.admin().setConfiguration(remainingPeers));
+      processReply(removeReply, "failed to remove " + oldPeer.getId());
+    } catch (IOException e) {
+      printFailure(stage, newPeerId, oldPeer, lowered, e);
+      throw e;
+    } finally {
+      invalidateCachedGroup();
+    }
+    long endNanos = System.nanoTime();
+    stages.put(stage, TimeUnit.NANOSECONDS.toMillis(endNanos - leadershipNanos));
+
+    mPrintStream.printf("Replaced %s by %s in %d ms (%s)%n", oldPeer.getId(), newPeerId,
+        TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos),
+        stages.entrySet().stream()
+            .map(entry -> entry.getKey() + " " + entry.getValue() + " ms")
+            .collect(Collectors.joining(", ")));
+    return 0;
+  }
+
+  /**
+   * Prints the stage which failed after the new peer is added, and the state the group is left
+   * in, as the command does not undo the addition.
+   */
+  private void printFailure(String stage, RaftPeerId newPeerId, RaftPeer oldPeer,
+      boolean lowered, IOException e) {
+    mPrintStream.printf("The %s stage failed: %s%n", stage, e.getMessage());
+    mPrintStream.printf("%s is left added to the group, %s is left in the group%s%n", newPeerId,
+        oldPeer.getId(), lowered ? " with priority 0" : "");
+  }
+
+  @Override
+  public void validateArgs(CommandLine cl) throws IllegalArgumentException {
+    super.validateArgs(cl);
+    if (!cl.hasOption(OLD_OPTION_NAME) || !cl.hasOption(NEW_OPTION_NAME)) {
+      throw new IllegalArgumentException(String.format(
+          "should provide both [%s] and [%s]", OLD_OPTION_NAME, NEW_OPTION_NAME));
+    }
+    PeerAddresses.parse(cl.getOptionValue(OLD_OPTION_NAME));
+    PeerAddresses.parse(cl.getOptionValue(NEW_OPTION_NAME));
+    if (cl.hasOption(MAX_LAG_OPTION_NAME)) {
+      String value = cl.getOptionValue(MAX_LAG_OPTION_NAME);
+      boolean valid;
+      try {
+        valid = Long.parseLong(value) >= 0;
+      } catch (NumberFormatException e) {
+        valid = false;
+      }
+      if (!valid) {
+        throw new IllegalArgumentException(String.format(
+            "the %s should be a non-negative integer: %s", MAX_LAG_OPTION_NAME, value));
+      }
+    }
+  }
+
+  @Override
+  protected boolean changesConfiguration() {
+    return true;
+  }
+
+  @Override
+  public String getUsage() {
+    return String.format("%s -%s <HOSTNAME:PORT> -%s <HOSTNAME:PORT>"
+        + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
+        + " [-%s RAFT_GROUP_ID]"
+        + " [-%s SERVICE_ID]"
+        + " [-%s MAX_LAG]"
+        + " [-%s DURATION]",
+        getCommandName(), OLD_OPTION_NAME, NEW_OPTION_NAME, PEER_OPTION_NAME,
+        GROUPID_OPTION_NAME, SERVICE_ID_OPTION_NAME, MAX_LAG_OPTION_NAME, DEADLINE_OPTION_NAME);
+  }
+
+  @Override
+  public String getDescription() {
+    return description();
+  }
+
+  @Override
+  public Options getOptions() {
+    return super.getOptions()
+        .addOption(OLD_OPTION_NAME, true, "Address of the peer to replace")
+        .addOption(NEW_OPTION_NAME, true, "Address of the peer replacing it")
+        .addOption(MAX_LAG_OPTION_NAME, true,
+            "Number of committed entries the new peer may lack before the old peer is "
+                + "removed, " + DEFAULT_MAX_LAG + " by default");
+  }
+
+  /**
+   * @return command's description
+   */
+  @VisibleForTesting
+  public static String description() {
+    return "Replaces a peer of a ratis group by a new peer, once the new peer is caught up";
+  }
+}
@@ -0,0 +1,377 @@
+package opendataio.ratisshell.cli.sh.command;
+
+import com.google.common.annotations.VisibleForTesting;
+import opendataio.ratisshell.RetryUtil;
+import opendataio.ratisshell.cli.LeaderCache;
+import opendataio.ratisshell.cli.LeaderTransfers;
+import opendataio.ratisshell.cli.LeaderTransfers.LeaderTransfer;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.protocol.GroupInfoReply;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command for spreading the leaders of all the groups of a set of servers evenly across the
+ * servers.
+ *
+ * The leader of every group is found at the same time. The leaders are then moved, one group at
+ * a time, from the server leading the most groups to the peer of the group leading the fewest,
+ * as long as it narrows the gap between them, so that the number of moves stays small. The moves
+ * transfer the leadership the way {@link ElectCommand} does, and run at the same time, with a
+ * limit on the moves in progress involving the same server.
+ */
+public class RebalanceCommand extends AbstractRatisCommand {
+  public static final String MAX_IN_FLIGHT_OPTION_NAME = "maxInFlight";
+  private static final int DEFAULT_MAX_IN_FLIGHT = 1;
+
+  /**
+   * @param context command context
+   */
+  public RebalanceCommand(Context context) {
+    super(context);
+  }
+
+  @Override
+  public String getCommandName() {
+    return "rebalance";
+  }
+
+  @Override
+  public int run(CommandLine cl) throws IOException {
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
+    int maxInFlight = cl.hasOption(MAX_IN_FLIGHT_OPTION_NAME)
+        ? Integer.parseInt(cl.getOptionValue(MAX_IN_FLIGHT_OPTION_NAME))
+        : DEFAULT_MAX_IN_FLIGHT;
+
+    List<String> failures = new ArrayList<>();
+    Map<RaftGroupId, List<RaftPeerId>> hosts = listAllGroups(failures);
+    if (hosts.isEmpty()) {
+      mPrintStream.println("failed to list groups from any of the peers, " + failures);
+      return -1;
+    }
+    List<RaftGroupId> groupIds = new ArrayList<>(hosts.keySet());
+    List<CompletableFuture<GroupInfoReply>> infos = getGroupInfos(hosts);
+    List<Placement> placements = new ArrayList<>();
+    Map<RaftPeerId, Integer> leaders = new TreeMap<>(Comparator.comparing(RaftPeerId::toString));
+    for (int i = 0; i < groupIds.size(); i++) {
+      GroupInfoReply reply;
+      try {
+        reply = RetryUtil.join(infos.get(i));
+      } catch (IOException e) {
+        failures.add(e.getMessage());
+        continue;
+      }
+      if (!reply.isSuccess()) {
+        failures.add(String.format("get info of group %s failed: %s",
+            groupIds.get(i).getUuid(), reply.getException()));
+        continue;
+      }
+      RaftPeerId leaderId = getLeaderId(reply.getRoleInfoProto());
+      for (RaftPeer peer : reply.getGroup().getPeers()) {
+        leaders.putIfAbsent(peer.getId(), 0);
+      }
+      if (leaderId == null) {
+        failures.add(String.format("group %s has no leader", groupIds.get(i).getUuid()));
+        continue;
+      }
+      LeaderCache.update(reply.getRaftGroupId(), leaderId);
+      leaders.merge(leaderId, 1, Integer::sum);
+      placements.add(new Placement(reply.getGroup(), leaderId));
+    }
+    mPrintStream.println("leaders per server before: " + leaders);
+    List<Placement> moves = plan(placements, leaders);
+    mPrintStream.println("planned leaders per server: " + leaders);
+    failures.forEach(failure -> mPrintStream.println("skipped: " + failure));
+    if (moves.isEmpty()) {
+      mPrintStream.println("the leaders are balanced, no leader to move");
+      return failures.isEmpty() ? 0 : -1;
+    }
+    mPrintStream.printf("moving the leaders of %d groups%n", moves.size());
+    long startNanos = System.nanoTime();
+    int failed = execute(moves, maxInFlight);
+    mPrintStream.printf("%d moves, %d succeeded, %d failed in %d ms%n", moves.size(),
+        moves.size() - failed, failed,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    printLeaders(hosts, leaders.keySet());
+    return failed == 0 && failures.isEmpty() ? 0 : -1;
+  }
+
+  /**
+   * Prints the number of leaders of every server, as the groups report them once the moves are
+   * done.
+   *
+   * @param hosts the peers hosting every group
+   * @param servers the servers to print, including the ones leading no group
+   */
+  private void printLeaders(Map<RaftGroupId, List<RaftPeerId>> hosts,
+      Collection<RaftPeerId> servers) throws IOException {
+    Map<RaftPeerId, Integer> leaders = new TreeMap<>(Comparator.comparing(RaftPeerId::toString));
+    servers.forEach(server -> leaders.put(server, 0));
+    int unknown = 0;
+    for (CompletableFuture<GroupInfoReply> info : getGroupInfos(hosts)) {
+      RaftPeerId leaderId;
+      try {
+        GroupInfoReply reply = RetryUtil.join(info);
+        leaderId = reply.isSuccess() ? getLeaderId(reply.getRoleInfoProto()) : null;
+      } catch (IOException e) {
+        leaderId = null;
+      }
+      if (leaderId == null) {
+        unknown++;
+      } else {
+        leaders.merge(leaderId, 1, Integer::sum);
+      }
+    }
+    mPrintStream.println("leaders per server after: " + leaders
+        + (unknown == 0 ? "" : String.format(", %d groups with no known leader", unknown)));
+  }
+
+  /**
+   * Plans the moves of the leaders, by moving the leader of one group at a time from a server to
+   * the peer of the group with the largest gap between their numbers of leaders, until no move
+   * narrows a gap. A group is moved at most once.
+   *
+   * @param placements the groups and their leaders
+   * @param leaders the number of leaders of every server, updated with the planned moves
+   * @return the groups to move, with their new leaders
+   */
+  @VisibleForTesting
+  static List<Placement> plan(List<Placement> placements,
+      Map<RaftPeerId, Integer> leaders) {
+    List<Placement> moves = new ArrayList<>();
+    List<Placement> unmoved = new LinkedList<>(placements);
+    while (true) {
+      Placement best = null;
+      int bestGap = 1;
+      for (Placement placement : unmoved) {
+        int from = leaders.getOrDefault(placement.mLeaderId, 0);
+        for (RaftPeer peer : placement.mGroup.getPeers()) {
+          int gap = from - leaders.getOrDefault(peer.getId(), 0);
+          if (gap > bestGap) {
+            best = new Placement(placement.mGroup, peer.getId(), placement.mLeaderId);
+            bestGap = gap;
+          }
+        }
+      }
+      if (best == null) {
+        return moves;
+      }
+      final RaftGroupId groupId = best.mGroup.getGroupId();
+      unmoved.removeIf(placement -> placement.mGroup.getGroupId().equals(groupId));
+      leaders.merge(best.mFromId, -1, Integer::sum);
+      leaders.merge(best.mLeaderId, 1, Integer::sum);
+      moves.add(best);
+    }
+  }
+
+  /**
+   * Runs the moves at the same time, with at most the given number of moves in progress
+   * involving the same server.
+   *
+   * @return the number of failed moves
+   */
+  private int execute(List<Placement> moves, int maxInFlight) throws IOException {
+    Object lock = new Object();
+    LinkedList<Placement> pending = new LinkedList<>(moves);
+    Map<RaftPeerId, Integer> inFlight = new HashMap<>();
+    int[] running = {0};
+    int[] failed = {0};
+    int parallelism = getParallelism();
+    synchronized (lock) {
+      while (!pending.isEmpty() || running[0] > 0) {
+        Iterator<Placement> iterator = pending.iterator();
+        while (iterator.hasNext() && running[0] < parallelism) {
+          Placement move = iterator.next();
+          if (inFlight.getOrDefault(move.mFromId, 0) >= maxInFlight
+              || inFlight.getOrDefault(move.mLeaderId, 0) >= maxInFlight) {
+            continue;
+          }
+          iterator.remove();
+          inFlight.merge(move.mFromId, 1, Integer::sum);
+          inFlight.merge(move.mLeaderId, 1, Integer::sum);
+          running[0]++;
+          long startNanos = System.nanoTime();
+          RetryUtil.call("move leader of group " + move.mGroup.getGroupId().getUuid(),
+              () -> move(move), getDeadline()).whenComplete((r, e) -> {
+                synchronized (lock) {
+                  inFlight.merge(move.mFromId, -1, Integer::sum);
+                  inFlight.merge(move.mLeaderId, -1, Integer::sum);
+                  running[0]--;
+                  long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                  if (e == null) {
+                    mPrintStream.printf(
+                        "group %s: moved leader %s -> %s in %d ms, no leader for at most %d ms%n",
+                        move.mGroup.getGroupId().getUuid(), move.mFromId, move.mLeaderId,
+                        elapsedMs, r.getLeaderlessMs());
+                  } else {
+                    failed[0]++;
+                    mPrintStream.printf("group %s: failed to move leader %s -> %s: %s%n",
+                        move.mGroup.getGroupId().getUuid(), move.mFromId, move.mLeaderId,
+                        e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+                  }
+                  lock.notifyAll();
+                }
+              });
+        }
+        if (running[0] > 0) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while moving the leaders");
+          }
+        }
+      }
+    }
+    return failed[0];
+  }
+
+  private LeaderTransfer move(Placement move) throws IOException {
+    RaftGroupId groupId = move.mGroup.getGroupId();
+    // build the new configuration from the latest one, the info may come from a follower
+    GroupInfoReply info = getGroupInfoFromLeader(move.mGroup);
+    if (!info.isSuccess()) {
+      throw new IOException("failed to get the group info: " + info.getException());
+    }
+    RaftGroup group = info.getGroup();
+    if (group.getPeer(move.mLeaderId) == null) {
+      throw new IOException(move.mLeaderId + " is no longer a peer of the group");
+    }
+    RaftClient client = getClient(group);
+    try {
+      LeaderTransfers transfers = getLeaderTransfers();
+      RaftClientReply reply = transfers.setLeaderPriority(client, group.getPeers(), move.mLeaderId);
+      if (!reply.isSuccess()) {
+        throw new IOException("failed to set priorities: " + reply.getException());
+      }
+      LeaderTransfer transfer = transfers.transferLeadership(client, group, reply, move.mLeaderId);
+      if (!transfer.getReply().isSuccess()) {
+        throw new IOException("failed to transfer leadership: "
+            + transfer.getReply().getException());
+      }
+      LeaderCache.update(groupId, move.mLeaderId);
+      return transfer;
+    } finally {
+      invalidateCachedGroup(groupId);
+    }
+  }
+
+  @Override
+  public void validateArgs(CommandLine cl) throws IllegalArgumentException {
+    super.validateArgs(cl);
+    if (cl.hasOption(MAX_IN_FLIGHT_OPTION_NAME)) {
+      String value = cl.getOptionValue(MAX_IN_FLIGHT_OPTION_NAME);
+      boolean valid;
+      try {
+        valid = Integer.parseInt(value) > 0;
+      } catch (NumberFormatException e) {
+        valid = false;
+      }
+      if (!valid) {
+        throw new IllegalArgumentException(String.format(
+            "the %s should be a positive integer: %s", MAX_IN_FLIGHT_OPTION_NAME, value));
+      }
+    }
+  }
+
+  @Override
+  protected boolean isAllGroups(CommandLine cl) {
+    return true;
+  }
+
+  @Override
+  public String getUsage() {
+    return String.format("%s"
+        + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
+        + " [-%s SERVICE_ID]"
+        + " [-%s MAX_MOVES_PER_SERVER]"
+        + " [-%s DURATION]",
+        getCommandName(), PEER_OPTION_NAME, SERVICE_ID_OPTION_NAME, MAX_IN_FLIGHT_OPTION_NAME,
+        DEADLINE_OPTION_NAME);
+  }
+
+  @Override
+  public String getDescription() {
+    return description();
+  }
+
+  @Override
+  public Options getOptions() {
+    return super.getOptions()
+        .addOption(MAX_IN_FLIGHT_OPTION_NAME, true,
+            "Maximum number of leader moves in progress involving the same server, "
+                + DEFAULT_MAX_IN_FLIGHT + " by default");
+  }
+
+  /**
+   * @return command's description
+   */
+  @VisibleForTesting
+  public static String description() {
+    return "Spreads the leaders of all the groups of the peers evenly across the peers";
+  }
+
+  /**
+   * A group and its leader, or a planned move of its leader.
+   */
+  @VisibleForTesting
+  static final class Placement {
+    private final RaftGroup mGroup;
+    private final RaftPeerId mLeaderId;
+    /** The current leader if the placement is a planned move, otherwise the leader. */
+    private final RaftPeerId mFromId;
+
+    Placement(RaftGroup group, RaftPeerId leaderId) {
+      this(group, leaderId, leaderId);
+    }
+
+    Placement(RaftGroup group, RaftPeerId leaderId, RaftPeerId fromId) {
+      mGroup = group;
+      mLeaderId = leaderId;
+      mFromId = fromId;
+    }
+
+    /**
+     * @return the group
+     */
+    RaftGroup getGroup() {
+      return mGroup;
+    }
+
+    /**
+     * @return the leader, or the new leader if the placement is a planned move
+     */
+    RaftPeerId getLeaderId() {
+      return mLeaderId;
+    }
+
+    /**
+     * @return the current leader
+     */
+    RaftPeerId getFromId() {
+      return mFromId;
+    }
+  }
+}
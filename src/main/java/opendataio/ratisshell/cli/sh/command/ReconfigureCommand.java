@@ -0,0 +1,222 @@
+package opendataio.ratisshell.cli.sh.command;
+
+import com.google.common.annotations.VisibleForTesting;
+import opendataio.ratisshell.cli.PeerAddresses;
+import opendataio.ratisshell.cli.RaftUtils;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command for adding peers, removing peers and setting priorities of a group at once.
+ *
+ * All the changes are applied as one configuration change, instead of one per change with
+ * {@link QuorumAddCommand}, {@link QuorumRemoveCommand} and {@link SetPriorityCommand}, so the
+ * group goes through a single joint consensus and replicates a single configuration entry.
+ */
+public class ReconfigureCommand extends AbstractRatisCommand {
+  public static final String ADD_OPTION_NAME = "add";
+  public static final String REMOVE_OPTION_NAME = "remove";
+  public static final String PRIORITY_OPTION_NAME = "priority";
+
+  /**
+   * @param context command context
+   */
+  public ReconfigureCommand(Context context) {
+    super(context);
+  }
+
+  @Override
+  public String getCommandName() {
+    return "reconfigure";
+  }
+
+  @Override
+  public int run(CommandLine cl) throws IOException {
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
+    Map<RaftPeerId, RaftPeer> peers = new LinkedHashMap<>();
+    for (RaftPeer peer : mRaftGroup.getPeers()) {
+      peers.put(peer.getId(), peer);
+    }
+    for (String address : getValues(cl, REMOVE_OPTION_NAME)) {
+      if (peers.remove(getPeerId(address)) == null) {
+        mPrintStream.printf("%s is not a peer of the group%n", address);
+        return -2;
+      }
+    }
+    for (String value : getValues(cl, ADD_OPTION_NAME)) {
+      String[] str = value.split(",");
+      InetSocketAddress address = PeerAddresses.parse(str[0]);
+      RaftPeerId peerId = RaftUtils.getPeerId(address);
+      if (peers.containsKey(peerId)) {
+        mPrintStream.printf("%s is already a peer of the group%n", str[0]);
+        return -2;
+      }
+      peers.put(peerId, RaftPeer.newBuilder()
+          .setId(peerId)
+          .setAddress(address)
+          .setPriority(str.length > 1 ? Integer.parseInt(str[1].trim()) : 0)
+          .build());
+    }
+    for (String value : getValues(cl, PRIORITY_OPTION_NAME)) {
+      String[] str = value.split(",");
+      RaftPeerId peerId = getPeerId(str[0]);
+      RaftPeer peer = peers.get(peerId);
+      if (peer == null) {
+        mPrintStream.printf("%s is not a peer of the new configuration%n", str[0]);
+        return -2;
+      }
+      peers.put(peerId, RaftPeer.newBuilder(peer)
+          .setPriority(Integer.parseInt(str[1].trim()))
+          .build());
+    }
+    if (peers.isEmpty()) {
+      mPrintStream.println("the new configuration should keep at least one peer");
+      return -2;
+    }
+
+    List<RaftPeer> newPeers = new ArrayList<>(peers.values());
+    mPrintStream.printf("Applying new configuration:%n  from %s%n  to   %s%n",
+        toString(mRaftGroup.getPeers()), toString(newPeers));
+    RaftClient client = getClient();
+    RaftClientReply reply =
+        call("set configuration", () -> client.admin().setConfiguration(newPeers));
+    processReply(reply, "failed to reconfigure the group");
+    invalidateCachedGroup();
+    return 0;
+  }
+
+  /**
+   * @return the peer id of an address, which is the id of the peer of the group with the address
+   *         if there is one
+   */
+  private RaftPeerId getPeerId(String address) {
+    String trimmed = address.trim();
+    return mRaftGroup.getPeers().stream()
+        .filter(peer -> peer.getAddress().equals(trimmed))
+        .map(RaftPeer::getId)
+        .findFirst()
+        .orElseGet(() -> RaftUtils.getPeerId(PeerAddresses.parse(trimmed)));
+  }
+
+  private static String[] getValues(CommandLine cl, String option) {
+    return cl.hasOption(option) ? cl.getOptionValues(option) : new String[0];
+  }
+
+  private static String toString(Iterable<RaftPeer> peers) {
+    List<String> strings = new ArrayList<>();
+    for (RaftPeer peer : peers) {
+      strings.add(peer.getAddress() + "(" + peer.getPriority() + ")");
+    }
+    return "[" + String.join(", ", strings) + "]";
+  }
+
+  @Override
+  public void validateArgs(CommandLine cl) throws IllegalArgumentException {
+    super.validateArgs(cl);
+    if (!cl.hasOption(ADD_OPTION_NAME) && !cl.hasOption(REMOVE_OPTION_NAME)
+        && !cl.hasOption(PRIORITY_OPTION_NAME)) {
+      throw new IllegalArgumentException(String.format(
+          "should provide at least one of [%s], [%s] and [%s]", ADD_OPTION_NAME,
+          REMOVE_OPTION_NAME, PRIORITY_OPTION_NAME));
+    }
+    // compare the peer ids, which identify the peers in the configuration
+    Set<RaftPeerId> removed = new HashSet<>();
+    for (String address : getValues(cl, REMOVE_OPTION_NAME)) {
+      removed.add(RaftUtils.getPeerId(PeerAddresses.parse(address)));
+    }
+    Set<RaftPeerId> added = new HashSet<>();
+    for (String value : getValues(cl, ADD_OPTION_NAME)) {
+      String[] str = value.split(",");
+      if (str.length > 2) {
+        throw new IllegalArgumentException("invalid peer to add: " + value);
+      }
+      RaftPeerId peerId = RaftUtils.getPeerId(PeerAddresses.parse(str[0]));
+      if (removed.contains(peerId)) {
+        throw new IllegalArgumentException(str[0] + " is both added and removed");
+      }
+      if (!added.add(peerId)) {
+        throw new IllegalArgumentException(str[0] + " is added twice");
+      }
+      if (str.length > 1) {
+        parsePriority(value, str[1]);
+      }
+    }
+    for (String value : getValues(cl, PRIORITY_OPTION_NAME)) {
+      String[] str = value.split(",");
+      if (str.length != 2) {
+        throw new IllegalArgumentException("invalid peer priority: " + value);
+      }
+      if (removed.contains(RaftUtils.getPeerId(PeerAddresses.parse(str[0])))) {
+        throw new IllegalArgumentException(str[0] + " is both removed and given a priority");
+      }
+      parsePriority(value, str[1]);
+    }
+  }
+
+  private static void parsePriority(String value, String priority) {
+    try {
+      Integer.parseInt(priority.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid priority: " + value, e);
+    }
+  }
+
+  @Override
+  protected boolean changesConfiguration() {
+    return true;
+  }
+
+  @Override
+  public String getUsage() {
+    return String.format("%s"
+        + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
+        + " [-%s RAFT_GROUP_ID]"
+        + " [-%s SERVICE_ID]"
+        + " [-%s PEER_HOST:PEER_PORT[,PRIORITY]]..."
+        + " [-%s PEER_HOST:PEER_PORT]..."
+        + " [-%s PEER_HOST:PEER_PORT,PRIORITY]..."
+        + " [-%s DURATION]",
+        getCommandName(), PEER_OPTION_NAME, GROUPID_OPTION_NAME, SERVICE_ID_OPTION_NAME,
+        ADD_OPTION_NAME, REMOVE_OPTION_NAME, PRIORITY_OPTION_NAME, DEADLINE_OPTION_NAME);
+  }
+
+  @Override
+  public String getDescription() {
+    return description();
+  }
+
+  @Override
+  public Options getOptions() {
+    return super.getOptions()
+        .addOption(ADD_OPTION_NAME, true,
+            "Peer to add, with its priority, 0 by default, may be repeated")
+        .addOption(REMOVE_OPTION_NAME, true, "Peer to remove, may be repeated")
+        .addOption(PRIORITY_OPTION_NAME, true,
+            "Peer with its new priority, may be repeated");
+  }
+
+  /**
+   * @return command's description
+   */
+  @VisibleForTesting
+  public static String description() {
+    return "Adds peers, removes peers and sets priorities of a ratis group in one "
+        + "configuration change";
+  }
+}
@@ -1,7 +1,6 @@
 package opendataio.ratisshell.cli.sh.command;
 
 import com.google.common.annotations.VisibleForTesting;
-import opendataio.ratisshell.cli.RaftUtils;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 import org.apache.ratis.client.RaftClient;
@@ -10,6 +9,7 @@ import org.apache.ratis.protocol.RaftPeer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,7 +34,10 @@ public class SetPriorityCommand extends AbstractRatisCommand {
 
   @Override
   public int run(CommandLine cl) throws IOException {
-    super.run(cl);
+    int ret = super.run(cl);
+    if (ret != 0) {
+      return ret;
+    }
     String[] peersNewPriority = cl.getOptionValues(PEER_WITH_NEW_PRIORITY);
     if (peersNewPriority.length < 1) {
       return -2;
@@ -45,23 +48,40 @@ public class SetPriorityCommand extends AbstractRatisCommand {
       addressPriorityMap.put(str[0], Integer.parseInt(str[1]));
     }
 
-    try (RaftClient client = RaftUtils.createClient(mRaftGroup)) {
-      List<RaftPeer> peers = new ArrayList<>();
-      for (RaftPeer peer : mRaftGroup.getPeers()) {
-        if (!addressPriorityMap.containsKey(peer.getAddress())) {
-          peers.add(RaftPeer.newBuilder(peer).build());
-        } else {
-          peers.add(
-                  RaftPeer.newBuilder(peer)
-                          .setPriority(addressPriorityMap.get(peer.getAddress()))
-                          .build()
-          );
-        }
+    RaftClient client = getClient();
+    List<RaftPeer> peers = setPriorities(mRaftGroup.getPeers(), addressPriorityMap);
+    RaftClientReply reply =
+        call("set configuration", () -> client.admin().setConfiguration(peers));
+    processReply(reply, "failed to set master priorities");
+    invalidateCachedGroup();
+    return 0;
+  }
+
+  /**
+   * @param groupPeers the peers of a group
+   * @param addressPriorityMap the new priorities of some of the peers, keyed by address
+   * @return the peers of the group with their new priorities
+   */
+  static List<RaftPeer> setPriorities(Collection<RaftPeer> groupPeers,
+      Map<String, Integer> addressPriorityMap) {
+    List<RaftPeer> peers = new ArrayList<>();
+    for (RaftPeer peer : groupPeers) {
+      if (!addressPriorityMap.containsKey(peer.getAddress())) {
+        peers.add(RaftPeer.newBuilder(peer).build());
+      } else {
+        peers.add(
+                RaftPeer.newBuilder(peer)
+                        .setPriority(addressPriorityMap.get(peer.getAddress()))
+                        .build()
+        );
       }
-      RaftClientReply reply = client.admin().setConfiguration(peers);
-      processReply(reply, "failed to set master priorities");
     }
-    return 0;
+    return peers;
+  }
+
+  @Override
+  protected boolean changesConfiguration() {
+    return true;
   }
 
   @Override
@@ -70,9 +90,10 @@ public class SetPriorityCommand extends AbstractRatisCommand {
                     + " [-%s PEER0_HOST:PEER0_PORT,PEER1_HOST:PEER1_PORT,PEER2_HOST:PEER2_PORT]"
                     + " [-%s RAFT_GROUP_ID]"
                     + " [-%s SERVICE_ID]"
-                    + " [-%s PEER_HOST:PEER_PORT,PRIORITY]",
+                    + " [-%s PEER_HOST:PEER_PORT,PRIORITY]"
+                    + " [-%s DURATION]",
             getCommandName(), PEER_OPTION_NAME, GROUPID_OPTION_NAME,
-            SERVICE_ID_OPTION_NAME, PEER_WITH_NEW_PRIORITY);
+            SERVICE_ID_OPTION_NAME, PEER_WITH_NEW_PRIORITY, DEADLINE_OPTION_NAME);
   }
 
   @Override
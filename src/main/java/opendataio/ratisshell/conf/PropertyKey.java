@@ -167,6 +167,70 @@ public final class PropertyKey implements Comparable<PropertyKey> {
           .setDescription(
               String.format("Comma-separated search path for %s.", Constants.SITE_PROPERTIES))
           .build();
+  public static final PropertyKey DISCOVERY_CACHE_DIR =
+      new Builder(Name.DISCOVERY_CACHE_DIR)
+          .setDefaultSupplier(
+              () -> String.format("%s/.ratis-shell/cache", System.getProperty("user.home")),
+              "${user.home}/.ratis-shell/cache")
+          .setDescription("The directory to persist the discovered raft groups.")
+          .build();
+  public static final PropertyKey DISCOVERY_CACHE_TTL_MS =
+      new Builder(Name.DISCOVERY_CACHE_TTL_MS)
+          .setDefaultValue(60_000)
+          .setDescription("How long in milliseconds a discovered raft group is reused by the "
+              + "following commands without asking the peers again. Set to 0 to disable the "
+              + "discovery cache.")
+          .build();
+  public static final PropertyKey DEADLINE_MS =
+      new Builder(Name.DEADLINE_MS)
+          .setDefaultValue(120_000)
+          .setDescription("The time in milliseconds a command may take at most, including the "
+              + "discovery of the raft group and all the retries of its requests.")
+          .build();
+  public static final PropertyKey ATTEMPT_TIMEOUT_MS =
+      new Builder(Name.ATTEMPT_TIMEOUT_MS)
+          .setDefaultValue(15_000)
+          .setDescription("The time in milliseconds a command waits at most for one peer to "
+              + "answer before giving up on it or trying another peer.")
+          .build();
+  public static final PropertyKey DAEMON_FILE =
+      new Builder(Name.DAEMON_FILE)
+          .setDefaultSupplier(
+              () -> String.format("%s/.ratis-shell/daemon", System.getProperty("user.home")),
+              "${user.home}/.ratis-shell/daemon")
+          .setDescription("The file where a running shell daemon publishes its address, which "
+              + "is only readable by the owner.")
+          .build();
+  public static final PropertyKey DAEMON_PORT =
+      new Builder(Name.DAEMON_PORT)
+          .setDefaultValue(0)
+          .setDescription("The loopback port the shell daemon listens on, 0 to pick a free "
+              + "port.")
+          .build();
+  public static final PropertyKey DAEMON_HANDLER_THREADS =
+      new Builder(Name.DAEMON_HANDLER_THREADS)
+          .setDefaultValue(8)
+          .setDescription("The maximum number of commands the shell daemon runs concurrently.")
+          .build();
+  public static final PropertyKey PARALLELISM =
+      new Builder(Name.PARALLELISM)
+          .setDefaultValue(16)
+          .setDescription("The maximum number of groups or servers a command talks to at the "
+              + "same time.")
+          .build();
+  public static final PropertyKey DNS_CACHE_TTL_MS =
+      new Builder(Name.DNS_CACHE_TTL_MS)
+          .setDefaultValue(60_000)
+          .setDescription("How long in milliseconds a resolved peer host name is reused without "
+              + "resolving it again. Set to 0 to resolve the host names in every command.")
+          .build();
+  public static final PropertyKey DNS_TIMEOUT_MS =
+      new Builder(Name.DNS_TIMEOUT_MS)
+          .setDefaultValue(1_000)
+          .setDescription("The time in milliseconds a command waits at most for the peer host "
+              + "names to be resolved. The host names not resolved in time are left to be "
+              + "resolved when connecting to the peers.")
+          .build();
 
   /**
    * A nested class to hold named string constants for their corresponding properties.
@@ -175,7 +239,17 @@ public final class PropertyKey implements Comparable<PropertyKey> {
   @ThreadSafe
   public static final class Name {
     public static final String CONF_DIR = "ratis.shell.conf.dir";
+    public static final String ATTEMPT_TIMEOUT_MS = "ratis.shell.attempt.timeout.ms";
+    public static final String DAEMON_FILE = "ratis.shell.daemon.file";
+    public static final String DAEMON_HANDLER_THREADS = "ratis.shell.daemon.handler.threads";
+    public static final String DAEMON_PORT = "ratis.shell.daemon.port";
+    public static final String DEADLINE_MS = "ratis.shell.deadline.ms";
+    public static final String DISCOVERY_CACHE_DIR = "ratis.shell.discovery.cache.dir";
+    public static final String DISCOVERY_CACHE_TTL_MS = "ratis.shell.discovery.cache.ttl.ms";
+    public static final String DNS_CACHE_TTL_MS = "ratis.shell.dns.cache.ttl.ms";
+    public static final String DNS_TIMEOUT_MS = "ratis.shell.dns.timeout.ms";
     public static final String HOME = "ratis.shell.home";
+    public static final String PARALLELISM = "ratis.shell.parallelism";
     public static final String SITE_CONF_DIR = "ratis.shell.site.conf.dir";
     public static final String TEST_MODE = "ratis.shell.test.mode";
 
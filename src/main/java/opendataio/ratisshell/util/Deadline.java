@@ -0,0 +1,46 @@
+package opendataio.ratisshell.util;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which an operation must complete.
+ */
+@ThreadSafe
+public final class Deadline {
+  private final long mDeadlineNanos;
+
+  private Deadline(long deadlineNanos) {
+    mDeadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * @param timeoutMs the time in milliseconds from now
+   * @return a deadline after the given time from now
+   */
+  public static Deadline after(long timeoutMs) {
+    return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+  }
+
+  /**
+   * @return the remaining time in milliseconds, or 0 if the deadline has passed
+   */
+  public long getRemainingMs() {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(mDeadlineNanos - System.nanoTime()));
+  }
+
+  /**
+   * @param timeoutMs a timeout in milliseconds
+   * @return the smaller of the given timeout and the remaining time
+   */
+  public long cap(long timeoutMs) {
+    return Math.min(timeoutMs, getRemainingMs());
+  }
+
+  /**
+   * @return whether the deadline has passed
+   */
+  public boolean isExpired() {
+    return getRemainingMs() == 0;
+  }
+}
@@ -0,0 +1,100 @@
+package opendataio.ratisshell.util;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long the phases of a shell invocation take on the current thread. The phases are
+ * only recorded between {@link #begin()} and {@link #end()}, so the instrumentation costs nothing
+ * otherwise. The time of a phase excludes the time of the phases nested in it.
+ *
+ * <pre>
+ * try (PhaseTimer.Phase phase = PhaseTimer.phase("discovery")) {
+ *   ...
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public final class PhaseTimer {
+  private static final ThreadLocal<PhaseTimer> CURRENT = new ThreadLocal<>();
+  private static final Phase NOOP = new Phase(null, null);
+
+  private final Map<String, Long> mNanos = new LinkedHashMap<>();
+  private final Deque<Phase> mPhases = new ArrayDeque<>();
+
+  private PhaseTimer() {}
+
+  /**
+   * Starts recording the phases run by the current thread.
+   */
+  public static void begin() {
+    CURRENT.set(new PhaseTimer());
+  }
+
+  /**
+   * Stops recording the phases run by the current thread.
+   *
+   * @return the time of every phase in milliseconds, in the order the phases first started
+   */
+  public static Map<String, Long> end() {
+    PhaseTimer timer = CURRENT.get();
+    CURRENT.remove();
+    if (timer == null) {
+      return Collections.emptyMap();
+    }
+    Map<String, Long> millis = new LinkedHashMap<>();
+    timer.mNanos.forEach((name, nanos) -> millis.put(name, TimeUnit.NANOSECONDS.toMillis(nanos)));
+    return millis;
+  }
+
+  /**
+   * Starts a phase, which ends when the returned phase is closed.
+   *
+   * @param name the phase name, the times of the phases with the same name are summed up
+   * @return the started phase
+   */
+  public static Phase phase(String name) {
+    PhaseTimer timer = CURRENT.get();
+    if (timer == null) {
+      return NOOP;
+    }
+    Phase phase = new Phase(timer, name);
+    timer.mPhases.push(phase);
+    return phase;
+  }
+
+  /**
+   * A running phase.
+   */
+  public static final class Phase implements Closeable {
+    private final PhaseTimer mTimer;
+    private final String mName;
+    private final long mStartNanos = System.nanoTime();
+    private long mNestedNanos;
+
+    private Phase(PhaseTimer timer, String name) {
+      mTimer = timer;
+      mName = name;
+    }
+
+    @Override
+    public void close() {
+      if (mTimer == null || mTimer.mPhases.peek() != this) {
+        return;
+      }
+      mTimer.mPhases.pop();
+      long elapsed = System.nanoTime() - mStartNanos;
+      mTimer.mNanos.merge(mName, elapsed - mNestedNanos, Long::sum);
+      Phase parent = mTimer.mPhases.peek();
+      if (parent != null) {
+        parent.mNestedNanos += elapsed;
+      }
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package opendataio.ratisshell;
+
+import opendataio.ratisshell.util.Deadline;
+import org.apache.ratis.protocol.exceptions.TimeoutIOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class RetryUtilTest {
+  @Test
+  public void completedAttemptIsNotInterrupted() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+    CompletableFuture<String> result = RetryUtil.failover("test",
+        Collections.singletonList("target"),
+        target -> {
+          started.countDown();
+          release.await();
+          return target;
+        },
+        Deadline.after(10_000), 10_000, new RetryUtil.Listener<String>() {
+          @Override
+          public void onSuccess(String target, long latencyMs) {
+            // runs in the thread of the attempt, once the attempt completes its future
+            interrupted.complete(Thread.currentThread().isInterrupted());
+          }
+
+          @Override
+          public void onFailure(String target, Throwable t) {
+            interrupted.completeExceptionally(t);
+          }
+        });
+    Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+    release.countDown();
+    Assert.assertEquals("target", RetryUtil.join(result));
+    Assert.assertFalse(interrupted.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void timedOutAttemptIsInterrupted() throws Exception {
+    CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+    CompletableFuture<String> result = RetryUtil.call("test", () -> {
+      try {
+        Thread.sleep(10_000);
+        interrupted.complete(false);
+      } catch (InterruptedException e) {
+        interrupted.complete(true);
+      }
+      return "done";
+    }, Deadline.after(100));
+    try {
+      result.get(10, TimeUnit.SECONDS);
+      Assert.fail("the attempt should time out");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutIOException);
+    }
+    Assert.assertTrue(interrupted.get(10, TimeUnit.SECONDS));
+  }
+}
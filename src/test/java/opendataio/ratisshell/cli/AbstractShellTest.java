@@ -0,0 +1,46 @@
+package opendataio.ratisshell.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class AbstractShellTest {
+  @Test
+  public void splitsOnWhitespace() {
+    Assert.assertEquals(Arrays.asList("info", "-peers", "a:1,b:2"),
+        AbstractShell.tokenize("  info\t-peers   a:1,b:2 "));
+    Assert.assertEquals(Collections.emptyList(), AbstractShell.tokenize(" \t "));
+  }
+
+  @Test
+  public void keepsQuotedWhitespace() {
+    Assert.assertEquals(Arrays.asList("elect", "-address", "host name:1"),
+        AbstractShell.tokenize("elect -address \"host name:1\""));
+    Assert.assertEquals(Arrays.asList("a b", "c"), AbstractShell.tokenize("'a b' c"));
+  }
+
+  @Test
+  public void joinsQuotedPartsOfOneArgument() {
+    Assert.assertEquals(Collections.singletonList("-deadline=10 s"),
+        AbstractShell.tokenize("-deadline=\"10 s\""));
+    Assert.assertEquals(Collections.singletonList("ab c"), AbstractShell.tokenize("a'b c'"));
+  }
+
+  @Test
+  public void keepsOtherQuoteInsideQuotes() {
+    Assert.assertEquals(Arrays.asList("it's", "say \"hi\""),
+        AbstractShell.tokenize("\"it's\" 'say \"hi\"'"));
+  }
+
+  @Test
+  public void keepsEmptyQuotedArgument() {
+    Assert.assertEquals(Arrays.asList("a", "", "b"), AbstractShell.tokenize("a '' b"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnclosedQuote() {
+    AbstractShell.tokenize("info -peers 'a:1");
+  }
+}
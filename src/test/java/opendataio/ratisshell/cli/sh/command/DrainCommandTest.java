@@ -0,0 +1,98 @@
+package opendataio.ratisshell.cli.sh.command;
+
+import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.proto.RaftProtos.RoleInfoProto;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.GroupInfoReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DrainCommandTest {
+  private static final RaftPeerId A = RaftPeerId.valueOf("a");
+  private static final RaftPeerId B = RaftPeerId.valueOf("b");
+  private static final RaftPeerId C = RaftPeerId.valueOf("c");
+
+  @Test
+  public void selectsMostUpToDatePeer() {
+    GroupInfoReply reply = reply(A, RaftPeerRole.LEADER, commitIndexes(100, 100, 101));
+    Assert.assertEquals(C, selectNewLeader(reply, A));
+  }
+
+  @Test
+  public void skipsPeersBehindLeader() {
+    GroupInfoReply reply = reply(A, RaftPeerRole.LEADER, commitIndexes(100, 99, 100));
+    Assert.assertEquals(C, selectNewLeader(reply, A));
+    reply = reply(A, RaftPeerRole.LEADER, commitIndexes(100, 99, 98));
+    Assert.assertNull(selectNewLeader(reply, A));
+  }
+
+  @Test
+  public void skipsExcludedPeers() {
+    GroupInfoReply reply = reply(A, RaftPeerRole.LEADER, commitIndexes(100, 101, 100));
+    Assert.assertEquals(C, selectNewLeader(reply, A, B));
+    Assert.assertNull(selectNewLeader(reply, A, B, C));
+  }
+
+  @Test
+  public void skipsPeersWithUnknownCommitIndex() {
+    Map<RaftPeerId, Long> commitIndexes = new LinkedHashMap<>();
+    commitIndexes.put(A, 100L);
+    commitIndexes.put(B, 100L);
+    GroupInfoReply reply = reply(A, RaftPeerRole.LEADER, commitIndexes);
+    Assert.assertEquals(B, selectNewLeader(reply, A));
+  }
+
+  @Test
+  public void needsReplyFromLeader() {
+    GroupInfoReply reply = reply(A, RaftPeerRole.FOLLOWER, commitIndexes(100, 100, 100));
+    Assert.assertNull(selectNewLeader(reply, A));
+    Map<RaftPeerId, Long> commitIndexes = commitIndexes(100, 100, 100);
+    commitIndexes.remove(A);
+    reply = reply(A, RaftPeerRole.LEADER, commitIndexes);
+    Assert.assertNull(selectNewLeader(reply, A));
+  }
+
+  private static RaftPeerId selectNewLeader(GroupInfoReply reply, RaftPeerId... excluded) {
+    RaftPeer newLeader = DrainCommand.selectNewLeader(reply, Arrays.asList(excluded));
+    return newLeader == null ? null : newLeader.getId();
+  }
+
+  private static Map<RaftPeerId, Long> commitIndexes(long a, long b, long c) {
+    Map<RaftPeerId, Long> commitIndexes = new LinkedHashMap<>();
+    commitIndexes.put(A, a);
+    commitIndexes.put(B, b);
+    commitIndexes.put(C, c);
+    return commitIndexes;
+  }
+
+  private static GroupInfoReply reply(RaftPeerId serverId, RaftPeerRole role,
+      Map<RaftPeerId, Long> commitIndexes) {
+    List<RaftPeer> peers = new ArrayList<>();
+    for (RaftPeerId peerId : Arrays.asList(A, B, C)) {
+      peers.add(RaftPeer.newBuilder().setId(peerId).setAddress(peerId + ":1").build());
+    }
+    List<CommitInfoProto> commitInfos = new ArrayList<>();
+    for (RaftPeer peer : peers) {
+      if (commitIndexes.containsKey(peer.getId())) {
+        commitInfos.add(CommitInfoProto.newBuilder()
+            .setServer(peer.getRaftPeerProto())
+            .setCommitIndex(commitIndexes.get(peer.getId()))
+            .build());
+      }
+    }
+    RaftGroup group = RaftGroup.valueOf(RaftGroupId.randomId(), peers);
+    return new GroupInfoReply(ClientId.randomId(), serverId, group.getGroupId(), 1, commitInfos,
+        group, RoleInfoProto.newBuilder().setRole(role).build(), true);
+  }
+}
@@ -0,0 +1,93 @@
+package opendataio.ratisshell.cli.sh.command;
+
+import opendataio.ratisshell.cli.sh.command.RebalanceCommand.Placement;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class RebalanceCommandTest {
+  private static final RaftPeerId A = RaftPeerId.valueOf("a");
+  private static final RaftPeerId B = RaftPeerId.valueOf("b");
+  private static final RaftPeerId C = RaftPeerId.valueOf("c");
+
+  @Test
+  public void spreadsLeadersOfOneServer() {
+    List<Placement> placements = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      placements.add(new Placement(group(A, B, C), A));
+    }
+    Map<RaftPeerId, Integer> leaders = leaders(3, 0, 0);
+    List<Placement> moves = RebalanceCommand.plan(placements, leaders);
+    Assert.assertEquals(2, moves.size());
+    Set<RaftGroupId> moved = new HashSet<>();
+    for (Placement move : moves) {
+      Assert.assertEquals(A, move.getFromId());
+      Assert.assertTrue(moved.add(move.getGroup().getGroupId()));
+    }
+    Assert.assertEquals(B, moves.get(0).getLeaderId());
+    Assert.assertEquals(C, moves.get(1).getLeaderId());
+    Assert.assertEquals(leaders(1, 1, 1), leaders);
+  }
+
+  @Test
+  public void keepsGapOfOne() {
+    List<Placement> placements = Arrays.asList(
+        new Placement(group(A, B, C), A),
+        new Placement(group(A, B, C), B));
+    Map<RaftPeerId, Integer> leaders = leaders(1, 1, 0);
+    Assert.assertTrue(RebalanceCommand.plan(placements, leaders).isEmpty());
+    Assert.assertEquals(leaders(1, 1, 0), leaders);
+  }
+
+  @Test
+  public void movesGapOfTwo() {
+    List<Placement> placements = Arrays.asList(
+        new Placement(group(A, B, C), A),
+        new Placement(group(A, B, C), A));
+    Map<RaftPeerId, Integer> leaders = leaders(2, 1, 0);
+    List<Placement> moves = RebalanceCommand.plan(placements, leaders);
+    Assert.assertEquals(1, moves.size());
+    Assert.assertEquals(C, moves.get(0).getLeaderId());
+    Assert.assertEquals(leaders(1, 1, 1), leaders);
+  }
+
+  @Test
+  public void movesOnlyToPeersOfTheGroup() {
+    List<Placement> placements = Arrays.asList(
+        new Placement(group(A, B), A),
+        new Placement(group(A, B), A),
+        new Placement(group(A, B), A));
+    Map<RaftPeerId, Integer> leaders = leaders(3, 0, 0);
+    List<Placement> moves = RebalanceCommand.plan(placements, leaders);
+    Assert.assertEquals(1, moves.size());
+    Assert.assertEquals(B, moves.get(0).getLeaderId());
+    Assert.assertEquals(leaders(2, 1, 0), leaders);
+  }
+
+  private static RaftGroup group(RaftPeerId... peerIds) {
+    List<RaftPeer> peers = new ArrayList<>();
+    for (RaftPeerId peerId : peerIds) {
+      peers.add(RaftPeer.newBuilder().setId(peerId).build());
+    }
+    return RaftGroup.valueOf(RaftGroupId.randomId(), peers);
+  }
+
+  private static Map<RaftPeerId, Integer> leaders(int a, int b, int c) {
+    Map<RaftPeerId, Integer> leaders = new HashMap<>();
+    leaders.put(A, a);
+    leaders.put(B, b);
+    leaders.put(C, c);
+    return leaders;
+  }
+}
@@ -0,0 +1,79 @@
+package opendataio.ratisshell.cli.sh.command;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class ReconfigureCommandTest {
+  private static final String PEERS = "127.0.0.1:19201,127.0.0.1:19202,127.0.0.1:19203";
+
+  private Context mContext;
+  private ReconfigureCommand mCommand;
+
+  @Before
+  public void before() {
+    mContext = new Context(new PrintStream(new ByteArrayOutputStream()));
+    mCommand = new ReconfigureCommand(mContext);
+  }
+
+  @After
+  public void after() throws IOException {
+    mCommand.close();
+    mContext.close();
+  }
+
+  @Test
+  public void acceptsDistinctChanges() {
+    mCommand.parseAndValidateArgs("-peers", PEERS, "-add", "127.0.0.1:19204,2",
+        "-remove", "127.0.0.1:19203", "-priority", "127.0.0.1:19201,3");
+    mCommand.parseAndValidateArgs("-peers", PEERS, "-add", "127.0.0.1:19204",
+        "-priority", "127.0.0.1:19204,1");
+  }
+
+  @Test
+  public void needsChange() {
+    assertInvalid("should provide at least one of", "-peers", PEERS);
+  }
+
+  @Test
+  public void rejectsAddedAndRemovedPeer() {
+    assertInvalid("is both added and removed", "-peers", PEERS,
+        "-add", "127.0.0.1:19203", "-remove", "127.0.0.1:19203");
+    assertInvalid("is both added and removed", "-peers", PEERS,
+        "-add", " 127.0.0.1:19203,1", "-remove", "127.0.0.1:19203 ");
+  }
+
+  @Test
+  public void rejectsPeerAddedTwice() {
+    assertInvalid("is added twice", "-peers", PEERS,
+        "-add", "127.0.0.1:19204", "-add", "127.0.0.1:19204,1");
+  }
+
+  @Test
+  public void rejectsPriorityOfRemovedPeer() {
+    assertInvalid("is both removed and given a priority", "-peers", PEERS,
+        "-remove", "127.0.0.1:19203", "-priority", "127.0.0.1:19203,1");
+  }
+
+  @Test
+  public void rejectsInvalidValues() {
+    assertInvalid("invalid peer to add", "-peers", PEERS, "-add", "127.0.0.1:19204,1,2");
+    assertInvalid("invalid priority", "-peers", PEERS, "-add", "127.0.0.1:19204,high");
+    assertInvalid("invalid peer priority", "-peers", PEERS, "-priority", "127.0.0.1:19201");
+    assertInvalid("invalid peer address", "-peers", PEERS, "-remove", "19203");
+  }
+
+  private void assertInvalid(String message, String... args) {
+    try {
+      mCommand.parseAndValidateArgs(args);
+      Assert.fail("the arguments should be invalid");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+}